@@ -0,0 +1,32 @@
+import java.time.LocalDateTime;
+
+// One grade or attendance change as it was logged
+public class ActivityEntry {
+    public static final String GRADE = "Grade";
+    public static final String ATTENDANCE = "Attendance";
+
+    private LocalDateTime timestamp;
+    private String kind; // Grade / Attendance
+    private String studentId;
+    private String item; // subject, or the YYYY-MM-DD marked
+    private String value; // score, or Present / Absent
+
+    public ActivityEntry(LocalDateTime timestamp, String kind, String studentId, String item, String value) {
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.studentId = studentId;
+        this.item = item;
+        this.value = value;
+    }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public String getKind() { return kind; }
+    public String getStudentId() { return studentId; }
+    public String getItem() { return item; }
+    public String getValue() { return value; }
+
+    @Override
+    public String toString() {
+        return timestamp + "|" + kind + "|" + studentId + "|" + item + "|" + value;
+    }
+}
@@ -1,8 +1,15 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import javax.swing.*;
 import javax.swing.border.AbstractBorder;
 import javax.swing.border.EmptyBorder;
@@ -41,10 +48,29 @@ public class AdminDashboardPanel extends JPanel {
     private JComboBox<String> attStatus;
     private JLabel attStatusLabel;
 
+    // Roll call: one row per matching student, loaded off the event thread and
+    // saved as a single batch; rows left unset are not saved
+    private static final int MAX_ROLL_CALL_ROWS = 2000;
+    private static final String UNSET = "—";
+    private JTextField rollCallDate, rollCallFilter;
+    private JTable rollCallTable;
+    private DefaultTableModel rollCallModel;
+    private JLabel rollCallStatusLabel;
+    private SwingWorker<Integer, Object[]> rollCallWorker;
+
     // Reports Tab Components
     private JTextField reportStudentId;
     private JTextArea reportArea;
 
+    // Activity Tab Components: logged changes in a time range, read off the event thread
+    private static final int MAX_ACTIVITY_ROWS = 10000;
+    private static final DateTimeFormatter ACTIVITY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private JTextField activityFrom, activityTo, activityFilter;
+    private JComboBox<String> activityKind;
+    private DefaultTableModel activityModel;
+    private JLabel activityStatusLabel;
+    private SwingWorker<Integer, ActivityEntry> activityWorker;
+
     public AdminDashboardPanel(App app, StudentService studentService) {
         this.app = app;
         this.studentService = studentService;
@@ -57,6 +83,7 @@ public class AdminDashboardPanel extends JPanel {
 
     public void refreshAll() {
         refreshStudentTable();
+        clearRollCall();
         clearAllStatusLabels();
         reportArea.setText("");
     }
@@ -221,6 +248,7 @@ public class AdminDashboardPanel extends JPanel {
         tabs.addTab("📊 Grades", buildGradesTab());
         tabs.addTab("📅 Attendance", buildAttendanceTab());
         tabs.addTab("📈 Reports", buildReportsTab());
+        tabs.addTab("🕒 Activity", buildActivityTab());
 
         return tabs;
     }
@@ -250,6 +278,10 @@ public class AdminDashboardPanel extends JPanel {
         JButton addBtn = createPrimaryButton("Add Student");
         addBtn.addActionListener(e -> addStudentAction());
 
+        JButton importBtn = createPrimaryButton("Import CSV...");
+        importBtn.setToolTipText("Students, grades or attendance; the kind is detected from the header row");
+        importBtn.addActionListener(e -> importCsvAction(importBtn));
+
         studentStatusLabel = createStatusLabel();
 
         // Assembly
@@ -265,6 +297,8 @@ public class AdminDashboardPanel extends JPanel {
         formCard.add(Box.createRigidArea(new Dimension(0, 20)));
         formCard.add(addBtn);
         formCard.add(Box.createRigidArea(new Dimension(0, 10)));
+        formCard.add(importBtn);
+        formCard.add(Box.createRigidArea(new Dimension(0, 10)));
         formCard.add(studentStatusLabel);
         formCard.add(Box.createVerticalGlue());
 
@@ -384,14 +418,14 @@ public class AdminDashboardPanel extends JPanel {
 
     // ========== ATTENDANCE TAB ==========
     private JPanel buildAttendanceTab() {
-        JPanel mainPanel = new JPanel(new GridBagLayout());
+        JPanel mainPanel = new JPanel(new BorderLayout(20, 20));
         mainPanel.setBackground(Color.WHITE);
-        mainPanel.setBorder(new EmptyBorder(40, 40, 40, 40));
+        mainPanel.setBorder(new EmptyBorder(25, 25, 25, 25));
 
         JPanel formCard = createCardPanel();
         formCard.setLayout(new BoxLayout(formCard, BoxLayout.Y_AXIS));
         formCard.setBorder(new EmptyBorder(30, 30, 30, 30));
-        formCard.setPreferredSize(new Dimension(450, 420));
+        formCard.setPreferredSize(new Dimension(370, 0));
 
         JLabel formTitle = new JLabel("Mark Attendance");
         formTitle.setFont(new Font("Segoe UI", Font.BOLD, 20));
@@ -439,11 +473,105 @@ public class AdminDashboardPanel extends JPanel {
         formCard.add(attStatusLabel);
         formCard.add(Box.createVerticalGlue());
 
-        mainPanel.add(formCard);
+        mainPanel.add(formCard, BorderLayout.WEST);
+        mainPanel.add(createRollCallPanel(), BorderLayout.CENTER);
 
         return mainPanel;
     }
 
+    // Section attendance: list the students matching a filter for a date, set
+    // Present/Absent, and save every row that was set with one applyBatch call.
+    private JPanel createRollCallPanel() {
+        JPanel panel = new JPanel(new BorderLayout(0, 15));
+        panel.setOpaque(false);
+
+        JLabel title = new JLabel("Roll Call");
+        title.setFont(new Font("Segoe UI", Font.BOLD, 20));
+        title.setForeground(DARK);
+
+        rollCallDate = createStyledTextField();
+        rollCallDate.setText(new SimpleDateFormat("yyyy-MM-dd").format(new java.util.Date()));
+        rollCallFilter = createStyledTextField();
+        rollCallFilter.setToolTipText("Student ID, name or username contains... (required)");
+        for (JTextField field : new JTextField[]{rollCallDate, rollCallFilter}) {
+            field.setPreferredSize(new Dimension(150, 35));
+            field.setMaximumSize(new Dimension(150, 35));
+        }
+
+        JButton loadBtn = createPrimaryButton("Load");
+        JButton allPresentBtn = createPrimaryButton("All Present");
+        JButton allAbsentBtn = createPrimaryButton("All Absent");
+        JButton saveBtn = createPrimaryButton("Save Roll Call");
+        for (JButton btn : new JButton[]{loadBtn, allPresentBtn, allAbsentBtn, saveBtn}) {
+            btn.setPreferredSize(new Dimension(130, 35));
+            btn.setMaximumSize(new Dimension(130, 35));
+        }
+        loadBtn.addActionListener(e -> loadRollCall());
+        rollCallDate.addActionListener(e -> loadRollCall());
+        rollCallFilter.addActionListener(e -> loadRollCall());
+        allPresentBtn.addActionListener(e -> setAllRollCall(true));
+        allAbsentBtn.addActionListener(e -> setAllRollCall(false));
+        saveBtn.addActionListener(e -> saveRollCallAction(saveBtn));
+
+        rollCallStatusLabel = createStatusLabel();
+        rollCallStatusLabel.setMaximumSize(new Dimension(600, 20));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        controls.setOpaque(false);
+        controls.add(new JLabel("Date"));
+        controls.add(rollCallDate);
+        controls.add(new JLabel("Filter"));
+        controls.add(rollCallFilter);
+        controls.add(loadBtn);
+
+        JPanel top = new JPanel();
+        top.setLayout(new BoxLayout(top, BoxLayout.Y_AXIS));
+        top.setOpaque(false);
+        title.setAlignmentX(Component.LEFT_ALIGNMENT);
+        controls.setAlignmentX(Component.LEFT_ALIGNMENT);
+        top.add(title);
+        top.add(Box.createRigidArea(new Dimension(0, 12)));
+        top.add(controls);
+
+        rollCallModel = new DefaultTableModel(new Object[]{"Student ID", "Name", "Status"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column == 2;
+            }
+        };
+        rollCallTable = new JTable(rollCallModel);
+        rollCallTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        rollCallTable.setRowHeight(30);
+        rollCallTable.setShowVerticalLines(false);
+        rollCallTable.setGridColor(new Color(240, 240, 240));
+        rollCallTable.setSelectionBackground(SOFT);
+        rollCallTable.setSelectionForeground(DARK);
+        rollCallTable.getColumnModel().getColumn(2).setCellEditor(
+                new DefaultCellEditor(new JComboBox<>(new String[]{UNSET, AttendanceBook.PRESENT, AttendanceBook.ABSENT})));
+
+        JTableHeader header = rollCallTable.getTableHeader();
+        header.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        header.setBackground(DARK);
+        header.setForeground(Color.WHITE);
+        header.setPreferredSize(new Dimension(0, 36));
+
+        JScrollPane scrollPane = new JScrollPane(rollCallTable);
+        scrollPane.setBorder(BorderFactory.createLineBorder(SOFT, 1));
+
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        bottom.setOpaque(false);
+        bottom.add(allPresentBtn);
+        bottom.add(allAbsentBtn);
+        bottom.add(saveBtn);
+        bottom.add(rollCallStatusLabel);
+
+        panel.add(top, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(bottom, BorderLayout.SOUTH);
+
+        return panel;
+    }
+
     // ========== REPORTS TAB ==========
     private JPanel buildReportsTab() {
         JPanel mainPanel = new JPanel(new BorderLayout(20, 20));
@@ -493,6 +621,108 @@ public class AdminDashboardPanel extends JPanel {
         return mainPanel;
     }
 
+    // ========== ACTIVITY TAB ==========
+    // Grade and attendance changes between two times, straight from the
+    // transaction logs, e.g. who was marked Absent yesterday
+    private JPanel buildActivityTab() {
+        JPanel mainPanel = new JPanel(new BorderLayout(20, 20));
+        mainPanel.setBackground(Color.WHITE);
+        mainPanel.setBorder(new EmptyBorder(25, 25, 25, 25));
+
+        JPanel searchPanel = createCardPanel();
+        searchPanel.setLayout(new BoxLayout(searchPanel, BoxLayout.Y_AXIS));
+        searchPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
+
+        activityFrom = createStyledTextField();
+        activityTo = createStyledTextField();
+        activityFrom.setToolTipText("YYYY-MM-DD or YYYY-MM-DD HH:mm");
+        activityTo.setToolTipText("YYYY-MM-DD (through the end of that day) or YYYY-MM-DD HH:mm");
+        activityFilter = createStyledTextField();
+        activityFilter.setToolTipText("Student ID, subject, date, score or status contains...");
+        for (JTextField field : new JTextField[]{activityFrom, activityTo, activityFilter}) {
+            field.setPreferredSize(new Dimension(160, 35));
+            field.setMaximumSize(new Dimension(160, 35));
+        }
+        activityKind = createStyledComboBox(new String[]{"All", ActivityEntry.GRADE, ActivityEntry.ATTENDANCE});
+        activityKind.setPreferredSize(new Dimension(130, 35));
+        activityKind.setMaximumSize(new Dimension(130, 35));
+
+        JButton searchBtn = createPrimaryButton("Search");
+        JButton todayBtn = createPrimaryButton("Today");
+        JButton yesterdayBtn = createPrimaryButton("Yesterday");
+        JButton weekBtn = createPrimaryButton("This Week");
+        for (JButton btn : new JButton[]{searchBtn, todayBtn, yesterdayBtn, weekBtn}) {
+            btn.setPreferredSize(new Dimension(120, 35));
+            btn.setMaximumSize(new Dimension(120, 35));
+        }
+        // presets are taken when clicked, so they stay right past midnight
+        searchBtn.addActionListener(e -> loadActivity());
+        todayBtn.addActionListener(e -> setActivityRange(LocalDate.now(), LocalDate.now()));
+        yesterdayBtn.addActionListener(e -> setActivityRange(LocalDate.now().minusDays(1), LocalDate.now().minusDays(1)));
+        weekBtn.addActionListener(e -> setActivityRange(LocalDate.now().with(DayOfWeek.MONDAY), LocalDate.now()));
+        ActionListener enterAction = e -> loadActivity();
+        activityFrom.addActionListener(enterAction);
+        activityTo.addActionListener(enterAction);
+        activityFilter.addActionListener(enterAction);
+        activityFrom.setText(LocalDate.now().toString());
+        activityTo.setText(LocalDate.now().toString());
+
+        activityStatusLabel = createStatusLabel();
+        activityStatusLabel.setMaximumSize(new Dimension(600, 20));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        controls.setOpaque(false);
+        controls.add(new JLabel("From"));
+        controls.add(activityFrom);
+        controls.add(new JLabel("To"));
+        controls.add(activityTo);
+        controls.add(activityKind);
+        controls.add(new JLabel("Filter"));
+        controls.add(activityFilter);
+        controls.add(searchBtn);
+
+        JPanel presets = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        presets.setOpaque(false);
+        presets.add(todayBtn);
+        presets.add(yesterdayBtn);
+        presets.add(weekBtn);
+        presets.add(activityStatusLabel);
+
+        controls.setAlignmentX(Component.LEFT_ALIGNMENT);
+        presets.setAlignmentX(Component.LEFT_ALIGNMENT);
+        searchPanel.add(controls);
+        searchPanel.add(Box.createRigidArea(new Dimension(0, 12)));
+        searchPanel.add(presets);
+
+        activityModel = new DefaultTableModel(new Object[]{"Time", "Type", "Student ID", "Subject / Date", "Value"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable activityTable = new JTable(activityModel);
+        activityTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        activityTable.setRowHeight(30);
+        activityTable.setShowVerticalLines(false);
+        activityTable.setGridColor(new Color(240, 240, 240));
+        activityTable.setSelectionBackground(SOFT);
+        activityTable.setSelectionForeground(DARK);
+
+        JTableHeader header = activityTable.getTableHeader();
+        header.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        header.setBackground(DARK);
+        header.setForeground(Color.WHITE);
+        header.setPreferredSize(new Dimension(0, 36));
+
+        JScrollPane scrollPane = new JScrollPane(activityTable);
+        scrollPane.setBorder(BorderFactory.createLineBorder(SOFT, 1));
+
+        mainPanel.add(searchPanel, BorderLayout.NORTH);
+        mainPanel.add(scrollPane, BorderLayout.CENTER);
+
+        return mainPanel;
+    }
+
     // ========== ACTION HANDLERS ==========
     private void addStudentAction() {
         String id = addStudentId.getText().trim();
@@ -522,6 +752,54 @@ public class AdminDashboardPanel extends JPanel {
         }
     }
 
+    // Runs the streaming importer off the event thread and reports per-row errors when done
+    private void importCsvAction(JButton importBtn) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.io.File file = chooser.getSelectedFile();
+
+        importBtn.setEnabled(false);
+        showStatus(studentStatusLabel, "Importing " + file.getName() + "...", DEEP);
+        new SwingWorker<CsvImporter.Report, Void>() {
+            @Override
+            protected CsvImporter.Report doInBackground() {
+                return new CsvImporter(studentService).importFile(file.toPath(), null);
+            }
+
+            @Override
+            protected void done() {
+                importBtn.setEnabled(true);
+                CsvImporter.Report report;
+                try {
+                    report = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showStatus(studentStatusLabel, "Import failed: " + cause.getMessage(), ERROR);
+                    return;
+                }
+
+                refreshStudentTable();
+                if (rollCallModel.getRowCount() > 0) loadRollCall();
+                if (report.getFailed() == 0) {
+                    showStatus(studentStatusLabel, "✓ Imported " + report.getImported() + " rows", SUCCESS);
+                    return;
+                }
+                showStatus(studentStatusLabel, "Imported " + report.getImported() + ", " + report.getFailed() + " rows failed", WARNING);
+
+                StringBuilder sb = new StringBuilder(report.summary()).append("\n\n");
+                for (CsvImporter.RowError err : report.getErrors()) sb.append(err).append("\n");
+                if (report.getFailed() > report.getErrors().size()) {
+                    sb.append("... ").append(report.getFailed() - report.getErrors().size()).append(" more\n");
+                }
+                JTextArea area = new JTextArea(sb.toString(), 15, 60);
+                area.setEditable(false);
+                JOptionPane.showMessageDialog(AdminDashboardPanel.this, new JScrollPane(area),
+                        "Import errors", JOptionPane.WARNING_MESSAGE);
+            }
+        }.execute();
+    }
+
     private void assignGradeAction() {
         String studentId = gradeStudentId.getText().trim();
         String subject = gradeSubject.getText().trim();
@@ -585,6 +863,256 @@ public class AdminDashboardPanel extends JPanel {
         }
     }
 
+    // Streams the matching students off the event thread, like the Activity tab.
+    // A filter is required: an unfiltered roll call would list the whole school.
+    private void loadRollCall() {
+        LocalDate date = parseRollCallDate();
+        if (date == null) return;
+        String filter = rollCallFilter.getText().trim().toLowerCase(Locale.ROOT);
+        if (filter.isEmpty()) {
+            showStatus(rollCallStatusLabel, "Enter a filter to load the roll call", WARNING);
+            return;
+        }
+
+        clearRollCall();
+        rollCallStatusLabel.setText("Loading...");
+        rollCallStatusLabel.setForeground(DEEP);
+
+        rollCallWorker = new SwingWorker<Integer, Object[]>() {
+            @Override
+            protected Integer doInBackground() {
+                int[] found = {0};
+                try (Stream<Student> students = studentService.streamStudents()) {
+                    students.filter(s -> matchesFilter(s, filter))
+                            .takeWhile(s -> !isCancelled() && found[0] < MAX_ROLL_CALL_ROWS)
+                            .forEach(s -> {
+                                // rows start from what is already recorded for that day, unset otherwise
+                                String status = s.getAttendanceBook().statusOn(date);
+                                publish(new Object[]{s.getStudentId(), s.getName(), status == null ? UNSET : status});
+                                found[0]++;
+                            });
+                }
+                return found[0];
+            }
+
+            @Override
+            protected void process(List<Object[]> chunk) {
+                if (isCancelled()) return;
+                for (Object[] row : chunk) rollCallModel.addRow(row);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                int found;
+                try {
+                    found = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showStatus(rollCallStatusLabel, "Load failed: " + cause.getMessage(), ERROR);
+                    return;
+                }
+                if (found >= MAX_ROLL_CALL_ROWS) {
+                    showStatus(rollCallStatusLabel, "First " + found + " students for " + date + "; narrow the filter for more", WARNING);
+                } else {
+                    showStatus(rollCallStatusLabel, found + " students for " + date, DEEP);
+                }
+            }
+        };
+        rollCallWorker.execute();
+    }
+
+    private void clearRollCall() {
+        // not interrupted: that would close the master file under the reader
+        if (rollCallWorker != null) rollCallWorker.cancel(false);
+        rollCallWorker = null;
+        if (rollCallTable.isEditing()) rollCallTable.getCellEditor().cancelCellEditing();
+        rollCallModel.setRowCount(0);
+    }
+
+    private boolean matchesFilter(Student s, String filter) {
+        return s.getStudentId().toLowerCase(Locale.ROOT).contains(filter)
+                || s.getName().toLowerCase(Locale.ROOT).contains(filter)
+                || s.getUsername().toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    private void setAllRollCall(boolean present) {
+        if (rollCallTable.isEditing()) rollCallTable.getCellEditor().stopCellEditing();
+        String status = present ? AttendanceBook.PRESENT : AttendanceBook.ABSENT;
+        for (int row = 0; row < rollCallModel.getRowCount(); row++) rollCallModel.setValueAt(status, row, 2);
+    }
+
+    // The save is one log append and one master write for the whole section, so
+    // like the import it runs off the event thread and reports when done
+    private void saveRollCallAction(JButton saveBtn) {
+        if (rollCallTable.isEditing()) rollCallTable.getCellEditor().stopCellEditing();
+        LocalDate date = parseRollCallDate();
+        if (date == null) return;
+        if (rollCallModel.getRowCount() == 0) {
+            showStatus(rollCallStatusLabel, "No students loaded", WARNING);
+            return;
+        }
+
+        List<Mutation> batch = new ArrayList<>(rollCallModel.getRowCount());
+        for (int row = 0; row < rollCallModel.getRowCount(); row++) {
+            String studentId = (String) rollCallModel.getValueAt(row, 0);
+            String status = (String) rollCallModel.getValueAt(row, 2);
+            if (UNSET.equals(status)) continue;
+            batch.add(Mutation.markAttendance(studentId, date.toString(), status));
+        }
+        if (batch.isEmpty()) {
+            showStatus(rollCallStatusLabel, "No rows set to Present or Absent", WARNING);
+            return;
+        }
+
+        saveBtn.setEnabled(false);
+        showStatus(rollCallStatusLabel, "Saving " + batch.size() + " students...", DEEP);
+        new SwingWorker<List<MutationResult>, Void>() {
+            @Override
+            protected List<MutationResult> doInBackground() {
+                return studentService.applyBatch(batch);
+            }
+
+            @Override
+            protected void done() {
+                saveBtn.setEnabled(true);
+                List<MutationResult> results;
+                try {
+                    results = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showStatus(rollCallStatusLabel, "Save failed: " + cause.getMessage(), ERROR);
+                    return;
+                }
+
+                List<String> failed = new ArrayList<>();
+                for (MutationResult r : results) {
+                    if (!r.isSuccess()) failed.add(r.getMutation().getStudentId());
+                }
+                if (failed.isEmpty()) {
+                    showStatus(rollCallStatusLabel, "✓ Attendance saved for " + results.size() + " students", SUCCESS);
+                } else {
+                    showStatus(rollCallStatusLabel, "Saved " + (results.size() - failed.size()) + ", failed: " + String.join(", ", failed), ERROR);
+                }
+                refreshStudentTable();
+            }
+        }.execute();
+    }
+
+    private LocalDate parseRollCallDate() {
+        String text = rollCallDate.getText().trim();
+        if (!Pattern.matches("\\d{4}-\\d{2}-\\d{2}", text)) {
+            showStatus(rollCallStatusLabel, "Date must be in YYYY-MM-DD format", ERROR);
+            return null;
+        }
+        try {
+            return LocalDate.parse(text);
+        } catch (java.time.format.DateTimeParseException e) {
+            showStatus(rollCallStatusLabel, "Not a valid date", ERROR);
+            return null;
+        }
+    }
+
+    private void setActivityRange(LocalDate from, LocalDate to) {
+        activityFrom.setText(from.toString());
+        activityTo.setText(to.toString());
+        loadActivity();
+    }
+
+    // The logs can hold millions of lines: the search runs in a SwingWorker and
+    // rows are added in chunks as they are found, up to MAX_ACTIVITY_ROWS. A new
+    // search cancels the one still running.
+    private void loadActivity() {
+        LocalDateTime from = parseActivityTime(activityFrom, false);
+        LocalDateTime to = parseActivityTime(activityTo, true);
+        if (from == null || to == null) return;
+        if (!to.isAfter(from)) {
+            showStatus(activityStatusLabel, "To must be after From", ERROR);
+            return;
+        }
+        String kind = (String) activityKind.getSelectedItem();
+        boolean grades = !ActivityEntry.ATTENDANCE.equals(kind);
+        boolean attendance = !ActivityEntry.GRADE.equals(kind);
+        String filter = activityFilter.getText().trim().toLowerCase(Locale.ROOT);
+
+        // not interrupted: that would close the log files under the reader
+        if (activityWorker != null) activityWorker.cancel(false);
+        activityModel.setRowCount(0);
+        activityStatusLabel.setText("Searching...");
+        activityStatusLabel.setForeground(DEEP);
+        long started = System.nanoTime();
+
+        activityWorker = new SwingWorker<Integer, ActivityEntry>() {
+            @Override
+            protected Integer doInBackground() {
+                int[] found = {0};
+                studentService.forEachActivity(from, to, grades, attendance, entry -> {
+                    if (isCancelled()) return false;
+                    if (!filter.isEmpty() && !matchesActivityFilter(entry, filter)) return true;
+                    publish(entry);
+                    return ++found[0] < MAX_ACTIVITY_ROWS;
+                });
+                return found[0];
+            }
+
+            @Override
+            protected void process(List<ActivityEntry> chunk) {
+                if (isCancelled()) return;
+                for (ActivityEntry entry : chunk) {
+                    activityModel.addRow(new Object[]{
+                        entry.getTimestamp().format(ACTIVITY_TIME),
+                        entry.getKind(),
+                        entry.getStudentId(),
+                        entry.getItem(),
+                        entry.getValue()
+                    });
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                int found;
+                try {
+                    found = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showStatus(activityStatusLabel, "Search failed: " + cause.getMessage(), ERROR);
+                    return;
+                }
+                long ms = (System.nanoTime() - started) / 1_000_000;
+                if (found >= MAX_ACTIVITY_ROWS) {
+                    showStatus(activityStatusLabel, "First " + found + " entries (" + ms + " ms); narrow the range or filter for more", WARNING);
+                } else {
+                    showStatus(activityStatusLabel, found + " entries (" + ms + " ms)", DEEP);
+                }
+            }
+        };
+        activityWorker.execute();
+    }
+
+    private boolean matchesActivityFilter(ActivityEntry entry, String filter) {
+        return entry.getStudentId().toLowerCase(Locale.ROOT).contains(filter)
+                || entry.getItem().toLowerCase(Locale.ROOT).contains(filter)
+                || entry.getValue().toLowerCase(Locale.ROOT).contains(filter);
+    }
+
+    // YYYY-MM-DD or YYYY-MM-DD HH:mm[:ss]; a bare date as the end of the range
+    // means through the end of that day
+    private LocalDateTime parseActivityTime(JTextField field, boolean end) {
+        String text = field.getText().trim();
+        try {
+            if (Pattern.matches("\\d{4}-\\d{2}-\\d{2}", text)) {
+                LocalDate date = LocalDate.parse(text);
+                return (end ? date.plusDays(1) : date).atStartOfDay();
+            }
+            return LocalDateTime.parse(text.replace(' ', 'T'));
+        } catch (java.time.format.DateTimeParseException e) {
+            showStatus(activityStatusLabel, "Times must be YYYY-MM-DD or YYYY-MM-DD HH:mm", ERROR);
+            return null;
+        }
+    }
+
     private void viewReportAction() {
         String studentId = reportStudentId.getText().trim();
         
@@ -781,6 +1309,8 @@ public class AdminDashboardPanel extends JPanel {
         if (studentStatusLabel != null) studentStatusLabel.setText(" ");
         if (gradeStatusLabel != null) gradeStatusLabel.setText(" ");
         if (attStatusLabel != null) attStatusLabel.setText(" ");
+        if (rollCallStatusLabel != null) rollCallStatusLabel.setText(" ");
+        if (activityStatusLabel != null) activityStatusLabel.setText(" ");
     }
 
     private void clearStudentForm() {
@@ -803,26 +1333,25 @@ public class AdminDashboardPanel extends JPanel {
     }
 
     private void refreshStudentTable() {
-        List<Student> students = studentService.getAllStudents();
-        
         DefaultTableModel model = new DefaultTableModel(
             new Object[]{"Student ID", "Name", "Username", "Grades", "Attendance"}, 0
         );
 
-        for (Student student : students) {
-            model.addRow(new Object[]{
+        // Stream so only the table rows are kept, not a full list of parsed students
+        try (Stream<Student> students = studentService.streamStudents()) {
+            students.forEach(student -> model.addRow(new Object[]{
                 student.getStudentId(),
                 student.getName(),
                 student.getUsername(),
                 student.getGrades().size(),
                 student.getAttendanceRecords().size()
-            });
+            }));
         }
 
         studentsTable.setModel(model);
         
         if (studentCountLabel != null) {
-            studentCountLabel.setText("Total Students: " + students.size());
+            studentCountLabel.setText("Total Students: " + model.getRowCount());
         }
     }
 
@@ -20,8 +20,10 @@ public class App {
     public App() {
         DataPaths.ensureDataFiles();
 
-        this.authService = new AuthService();
-        this.studentService = new StudentService();
+        // One resident student store for the whole app; both services read and write through it
+        StudentRepository studentRepository = new StudentRepository();
+        this.authService = new AuthService(studentRepository);
+        this.studentService = new StudentService(studentRepository);
 
         // Use an undecorated frame so we can draw a custom title bar
         this.frame = new JFrame();
@@ -0,0 +1,273 @@
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Attendance for one student as two bitsets indexed by epoch day (offset by
+// baseDay): "recorded" has a bit for every day with an entry and "present" for
+// the days marked Present. Entries the bitsets cannot represent - dates that are
+// not yyyy-MM-dd, or statuses other than exactly "Present"/"Absent" - are kept
+// as-is in an overflow list so nothing read from the master file is lost.
+public class AttendanceBook {
+    public static final String PRESENT = "Present";
+    public static final String ABSENT = "Absent";
+
+    private long baseDay;
+    private BitSet recorded = new BitSet();
+    private BitSet present = new BitSet();
+    private final List<Attendance> overflow = new ArrayList<>(0);
+
+    // Bumped on every change so list views know when to rebuild their snapshot
+    private int version;
+
+    public static AttendanceBook of(List<Attendance> records) {
+        AttendanceBook book = new AttendanceBook();
+        for (Attendance a : records) book.put(a.getDate(), a.getStatus());
+        return book;
+    }
+
+    // O(1) apart from the occasional rebase when a date precedes everything stored
+    public void put(String date, String status) {
+        long day = epochDay(date);
+        if (day != Long.MIN_VALUE && (PRESENT.equals(status) || ABSENT.equals(status))) {
+            removeOverflow(date);
+            int bit = bitFor(day);
+            recorded.set(bit);
+            present.set(bit, PRESENT.equals(status));
+        } else {
+            if (day != Long.MIN_VALUE) clearDay(day);
+            removeOverflow(date);
+            overflow.add(new Attendance(date, status));
+        }
+        version++;
+    }
+
+    // Parser fast path for an already validated day; no strings involved
+    void putDay(long day, boolean isPresent) {
+        if (!overflow.isEmpty()) removeOverflow(LocalDate.ofEpochDay(day).toString());
+        int bit = bitFor(day);
+        recorded.set(bit);
+        present.set(bit, isPresent);
+        version++;
+    }
+
+    public void remove(String date) {
+        long day = epochDay(date);
+        if (day != Long.MIN_VALUE) clearDay(day);
+        removeOverflow(date);
+        version++;
+    }
+
+    public int size() {
+        return recorded.cardinality() + overflow.size();
+    }
+
+    public int presentCount() {
+        int count = present.cardinality();
+        for (Attendance a : overflow) {
+            if (PRESENT.equalsIgnoreCase(a.getStatus())) count++;
+        }
+        return count;
+    }
+
+    // Percentage of recorded days marked present, or 0 when nothing is recorded
+    public double attendanceRate() {
+        int total = size();
+        return total == 0 ? 0.0 : presentCount() * 100.0 / total;
+    }
+
+    // "Present", "Absent", or null when the day has no bitset entry
+    public String statusOn(LocalDate date) {
+        long bit = date.toEpochDay() - baseDay;
+        if (bit < 0 || bit > Integer.MAX_VALUE || !recorded.get((int) bit)) return null;
+        return present.get((int) bit) ? PRESENT : ABSENT;
+    }
+
+    public int presentBetween(LocalDate fromInclusive, LocalDate toInclusive) {
+        int from = (int) Math.max(0, fromInclusive.toEpochDay() - baseDay);
+        long to = toInclusive.toEpochDay() - baseDay + 1;
+        if (to <= from) return 0;
+        return present.get(from, (int) Math.min(Integer.MAX_VALUE, to)).cardinality();
+    }
+
+    // Number of most recent recorded days that were all Present; unrecorded days
+    // (weekends, holidays) do not break a streak
+    public int currentStreak() {
+        int streak = 0;
+        for (int bit = recorded.length() - 1; bit >= 0; bit = recorded.previousSetBit(bit - 1)) {
+            if (!present.get(bit)) break;
+            streak++;
+        }
+        return streak;
+    }
+
+    public int longestStreak() {
+        int best = 0;
+        int run = 0;
+        for (int bit = recorded.nextSetBit(0); bit >= 0; bit = recorded.nextSetBit(bit + 1)) {
+            run = present.get(bit) ? run + 1 : 0;
+            best = Math.max(best, run);
+        }
+        return best;
+    }
+
+    public AttendanceBook copy() {
+        AttendanceBook c = new AttendanceBook();
+        c.baseDay = baseDay;
+        c.recorded = (BitSet) recorded.clone();
+        c.present = (BitSet) present.clone();
+        c.overflow.addAll(overflow);
+        return c;
+    }
+
+    // date:status,date:status - bitset days in date order, then overflow entries
+    public void appendCsv(StringBuilder sb) {
+        boolean first = true;
+        for (int bit = recorded.nextSetBit(0); bit >= 0; bit = recorded.nextSetBit(bit + 1)) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(LocalDate.ofEpochDay(baseDay + bit)).append(':').append(present.get(bit) ? PRESENT : ABSENT);
+        }
+        for (Attendance a : overflow) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(a.getDate()).append(':').append(a.getStatus());
+        }
+    }
+
+    // Bitset days in date order, for encoders that store days rather than text
+    interface DayVisitor {
+        void visit(long epochDay, boolean isPresent);
+    }
+
+    void forEachDay(DayVisitor visitor) {
+        for (int bit = recorded.nextSetBit(0); bit >= 0; bit = recorded.nextSetBit(bit + 1)) {
+            visitor.visit(baseDay + bit, present.get(bit));
+        }
+    }
+
+    int dayCount() {
+        return recorded.cardinality();
+    }
+
+    // Entries kept as text because the bitsets cannot represent them
+    List<Attendance> overflowEntries() {
+        return overflow;
+    }
+
+    // List<Attendance> view in the same order as appendCsv. Elements are
+    // snapshots; set/add/remove on the list write through to the bitsets.
+    public List<Attendance> asList() {
+        return new AbstractList<Attendance>() {
+            private Attendance[] snapshot;
+            private int snapshotVersion = -1;
+
+            @Override
+            public Attendance get(int i) {
+                return entries()[i];
+            }
+
+            @Override
+            public int size() {
+                return entries().length;
+            }
+
+            @Override
+            public Attendance set(int i, Attendance a) {
+                Attendance previous = get(i);
+                AttendanceBook.this.remove(previous.getDate());
+                put(a.getDate(), a.getStatus());
+                return previous;
+            }
+
+            @Override
+            public void add(int i, Attendance a) {
+                put(a.getDate(), a.getStatus());
+                modCount++;
+            }
+
+            @Override
+            public Attendance remove(int i) {
+                Attendance previous = get(i);
+                AttendanceBook.this.remove(previous.getDate());
+                modCount++;
+                return previous;
+            }
+
+            private Attendance[] entries() {
+                if (snapshotVersion != version) {
+                    Attendance[] all = new Attendance[AttendanceBook.this.size()];
+                    int n = 0;
+                    for (int bit = recorded.nextSetBit(0); bit >= 0; bit = recorded.nextSetBit(bit + 1)) {
+                        all[n++] = new Attendance(LocalDate.ofEpochDay(baseDay + bit).toString(), present.get(bit) ? PRESENT : ABSENT);
+                    }
+                    for (Attendance a : overflow) all[n++] = new Attendance(a.getDate(), a.getStatus());
+                    snapshot = all;
+                    snapshotVersion = version;
+                }
+                return snapshot;
+            }
+        };
+    }
+
+    private void clearDay(long day) {
+        long bit = day - baseDay;
+        if (bit < 0 || bit > Integer.MAX_VALUE) return;
+        recorded.clear((int) bit);
+        present.clear((int) bit);
+    }
+
+    private void removeOverflow(String date) {
+        if (!overflow.isEmpty()) overflow.removeIf(a -> a.getDate().equals(date));
+    }
+
+    private int bitFor(long day) {
+        if (recorded.isEmpty()) {
+            baseDay = day;
+            recorded = new BitSet();
+            present = new BitSet();
+        } else if (day < baseDay) {
+            rebase(day);
+        }
+        return (int) (day - baseDay);
+    }
+
+    private void rebase(long newBase) {
+        int shift = (int) (baseDay - newBase);
+        BitSet r = new BitSet();
+        BitSet p = new BitSet();
+        for (int bit = recorded.nextSetBit(0); bit >= 0; bit = recorded.nextSetBit(bit + 1)) {
+            r.set(bit + shift);
+            if (present.get(bit)) p.set(bit + shift);
+        }
+        recorded = r;
+        present = p;
+        baseDay = newBase;
+    }
+
+    // Epoch day for a strict yyyy-MM-dd date, or Long.MIN_VALUE for anything else
+    static long epochDay(String date) {
+        return date == null ? Long.MIN_VALUE : epochDay(date, 0, date.length());
+    }
+
+    static long epochDay(String s, int from, int to) {
+        if (to - from != 10 || s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-') return Long.MIN_VALUE;
+        int y = digits(s, from, from + 4);
+        int m = digits(s, from + 5, from + 7);
+        int d = digits(s, from + 8, from + 10);
+        if (y < 0 || m < 1 || m > 12 || d < 1) return Long.MIN_VALUE;
+        if (d > LocalDate.of(y, m, 1).lengthOfMonth()) return Long.MIN_VALUE;
+        return LocalDate.of(y, m, d).toEpochDay();
+    }
+
+    private static int digits(String s, int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+}
@@ -4,8 +4,9 @@ import java.util.Optional;
 public class AuthService {
     private final StudentRepository studentRepo;
 
-    public AuthService() {
-        this.studentRepo = new StudentRepository();
+    // Shares the repository with StudentService so logins see the admins' writes immediately
+    public AuthService(StudentRepository studentRepo) {
+        this.studentRepo = studentRepo;
     }
 
     public Optional<Admin> authenticateAdmin(String username, String password) {
@@ -29,12 +30,13 @@ public class AuthService {
 
     public Optional<Student> authenticateStudent(String username, String password) {
         String encInput = CaesarCipher.encrypt(password, CaesarCipher.DEFAULT_SHIFT);
-        Optional<Student> sOpt = studentRepo.findByUsername(username);
-        if (sOpt.isEmpty()) return Optional.empty();
+        // check the password against the projected record; the full student is only built on success
+        Optional<StudentCredentials> cOpt = studentRepo.findCredentialsByUsername(username);
+        if (cOpt.isEmpty()) return Optional.empty();
 
-        Student s = sOpt.get();
-        if (encInput.equals(s.getEncryptedPassword())) {
-            return Optional.of(s);
+        StudentCredentials c = cOpt.get();
+        if (encInput.equals(c.getEncryptedPassword())) {
+            return studentRepo.findByStudentId(c.getStudentId());
         }
         return Optional.empty();
     }
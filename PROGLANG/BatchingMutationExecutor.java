@@ -0,0 +1,176 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Queues submitted mutations and applies them on one writer thread, handing
+// as many as fit in MAX_BATCH to StudentService.applyBatch in one call (group
+// commit: one append per transaction log and one master write per call).
+// Each submitAll() is a unit that is never split, and units are applied in
+// the order they were submitted, so every student's changes land in
+// submission order. There are no per-student shards: the repository
+// serializes master writes, and the checks and merges applyBatch does around
+// that write are small next to it, so threads ahead of the writer had nothing
+// to do. stats() reports queue depth and throughput for sizing batches.
+public class BatchingMutationExecutor {
+    // Upper bound on one applyBatch call, unless a single submitAll is larger
+    public static final int MAX_BATCH = 10000;
+
+    private final StudentService studentService;
+    private final Thread writer;
+    private final long startedNanos = System.nanoTime();
+
+    // Guards closed and the queue, so that nothing is queued once close() has started
+    private final Object lock = new Object();
+    private boolean closed;
+    private final ArrayDeque<Unit> queue = new ArrayDeque<>();
+    private int queuedItems;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    // One submitAll: applied together, in list order
+    private static class Unit {
+        final List<Mutation> mutations;
+        final List<CompletableFuture<MutationResult>> futures;
+
+        Unit(List<Mutation> mutations, List<CompletableFuture<MutationResult>> futures) {
+            this.mutations = mutations;
+            this.futures = futures;
+        }
+    }
+
+    public BatchingMutationExecutor(StudentService studentService) {
+        this.studentService = studentService;
+        this.writer = new Thread(this::writeLoop, "mutation-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<MutationResult> submit(Mutation m) {
+        return submitAll(List.of(m)).get(0);
+    }
+
+    // The mutations are applied together, in list order, after anything submitted earlier
+    public List<CompletableFuture<MutationResult>> submitAll(List<Mutation> mutations) {
+        List<CompletableFuture<MutationResult>> futures = new ArrayList<>(mutations.size());
+        for (int i = 0; i < mutations.size(); i++) futures.add(new CompletableFuture<>());
+        if (futures.isEmpty()) return futures;
+
+        synchronized (lock) {
+            if (closed) {
+                for (CompletableFuture<MutationResult> f : futures) f.completeExceptionally(new IllegalStateException("Executor closed"));
+                return futures;
+            }
+            queue.add(new Unit(new ArrayList<>(mutations), futures));
+            queuedItems += mutations.size();
+            lock.notifyAll();
+        }
+        return futures;
+    }
+
+    // Items waiting to be applied
+    public int queueDepth() {
+        synchronized (lock) {
+            return queuedItems;
+        }
+    }
+
+    public Stats stats() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startedNanos) / 1e9);
+        long done = completed.get();
+        double busy = 100.0 * busyNanos.get() / 1e9 / seconds;
+        return new Stats(queueDepth(), done, batches.get(), done / seconds, Math.min(100.0, busy));
+    }
+
+    // Stops accepting mutations and waits until everything submitted is applied
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<Unit> units = new ArrayList<>();
+            synchronized (lock) {
+                while (queue.isEmpty()) {
+                    if (closed) return;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // woken again by the next unit or by close()
+                    }
+                }
+                // whole units in submission order, up to MAX_BATCH items
+                int items = 0;
+                while (!queue.isEmpty() && (units.isEmpty() || items + queue.peek().mutations.size() <= MAX_BATCH)) {
+                    Unit u = queue.poll();
+                    items += u.mutations.size();
+                    units.add(u);
+                }
+                queuedItems -= items;
+            }
+            apply(units);
+        }
+    }
+
+    private void apply(List<Unit> units) {
+        long t = System.nanoTime();
+        List<Mutation> mutations = new ArrayList<>();
+        List<CompletableFuture<MutationResult>> futures = new ArrayList<>();
+        for (Unit u : units) {
+            mutations.addAll(u.mutations);
+            futures.addAll(u.futures);
+        }
+        try {
+            // rejected items come back as failed results, in order
+            List<MutationResult> results = studentService.applyBatch(mutations);
+            for (int i = 0; i < futures.size(); i++) futures.get(i).complete(results.get(i));
+        } catch (RuntimeException e) {
+            for (CompletableFuture<MutationResult> f : futures) f.completeExceptionally(e);
+        }
+        busyNanos.addAndGet(System.nanoTime() - t);
+        batches.incrementAndGet();
+        completed.addAndGet(mutations.size());
+    }
+
+    // Point-in-time counters for the writer
+    public static class Stats {
+        private final int queueDepth;
+        private final long completed;
+        private final long batches;
+        private final double perSecond;
+        private final double busyPercent;
+
+        Stats(int queueDepth, long completed, long batches, double perSecond, double busyPercent) {
+            this.queueDepth = queueDepth;
+            this.completed = completed;
+            this.batches = batches;
+            this.perSecond = perSecond;
+            this.busyPercent = busyPercent;
+        }
+
+        public int getQueueDepth() { return queueDepth; }
+        public long getCompleted() { return completed; }
+        public long getBatches() { return batches; }
+        public double getPerSecond() { return perSecond; }
+        public double getBusyPercent() { return busyPercent; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "queued %d, done %d in %d batches, %.0f/s, %.0f%% busy",
+                    queueDepth, completed, batches, perSecond, busyPercent);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Versioned binary layout for student records, used by StudentSnapshot and
+// convertible both ways with the students_master.txt text layout.
+//
+//   file    := magic "SISB" varint(formatVersion) record* 0x00
+//   record  := 0x01 str(studentId) str(name) str(username) str(encPass)
+//              varlong(version) grades attendance
+//   str     := varint(byteLength + 1) UTF-8 bytes (0 = null)
+//   grades  := varint(count) { subjectRef zigzag(score) }*
+//   subjectRef := varint(id) into the file's subject dictionary; an id equal to
+//              the dictionary size defines the next entry and is followed by str
+//   attendance := varint(days) { varlong(zigzag(epochDay - previousDay) << 1 | present) }*
+//              varint(others) { str(date) str(status) }*
+//
+// Names and passwords may contain '|', ',' or ':' here. Grade and attendance
+// columns are stored as the books the text parser builds from them, so text that
+// parser would skip (items without ':', non-numeric scores) does not survive a
+// round trip; everything the application can see does.
+//
+// Headless: java BinaryStudentFormat to-binary <master.txt> <out.bin>
+//           java BinaryStudentFormat to-text <in.bin> <master.txt>
+//           java BinaryStudentFormat bench <master.txt>
+public class BinaryStudentFormat {
+    public static final int FORMAT_VERSION = 1;
+    private static final byte[] MAGIC = {'S', 'I', 'S', 'B'};
+    private static final int RECORD = 1;
+    private static final int END = 0;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private BinaryStudentFormat() {}
+
+    // Streams records out; close() (or finish()) writes the end marker
+    public static class Writer implements Closeable {
+        private final OutputStream out;
+        private final boolean closeOut;
+        private final byte[] buf = new byte[BUFFER_BYTES];
+        private int pos;
+        private final Map<String, Integer> subjects = new HashMap<>();
+        private boolean finished;
+
+        public Writer(OutputStream out) throws IOException {
+            this(out, true);
+        }
+
+        // closeOut false leaves the stream open for a caller that writes more after the records
+        public Writer(OutputStream out, boolean closeOut) throws IOException {
+            this.out = out;
+            this.closeOut = closeOut;
+            for (byte b : MAGIC) writeByte(b);
+            writeVarLong(FORMAT_VERSION);
+        }
+
+        public void write(Student s) throws IOException {
+            writeByte(RECORD);
+            writeString(s.getStudentId());
+            writeString(s.getName());
+            writeString(s.getUsername());
+            writeString(s.getEncryptedPassword());
+            writeVarLong(s.getVersion());
+
+            // encoded columns are decoded into throwaway books; a stored Student is never decoded in place
+            String rawGrades = s.getRawGrades();
+            GradeBook grades = rawGrades != null
+                    ? StudentRecordParser.parseGradeBook(rawGrades, 0, rawGrades.length())
+                    : s.getGradeBook();
+            String rawAttendance = s.getRawAttendance();
+            AttendanceBook attendance = rawAttendance != null
+                    ? StudentRecordParser.parseAttendanceBook(rawAttendance, 0, rawAttendance.length())
+                    : s.getAttendanceBook();
+            writeGrades(grades);
+            writeAttendance(attendance);
+        }
+
+        private void writeGrades(GradeBook grades) throws IOException {
+            int n = grades == null ? 0 : grades.size();
+            writeVarLong(n);
+            for (int i = 0; i < n; i++) {
+                String subject = grades.subjectAt(i);
+                Integer id = subjects.get(subject);
+                if (id == null) {
+                    writeVarLong(subjects.size());
+                    writeString(subject);
+                    subjects.put(subject, subjects.size());
+                } else {
+                    writeVarLong(id);
+                }
+                writeVarLong(zigzag(grades.scoreAt(i)));
+            }
+        }
+
+        private void writeAttendance(AttendanceBook attendance) throws IOException {
+            if (attendance == null) {
+                writeVarLong(0);
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(attendance.dayCount());
+            long[] previous = {0};
+            IOException[] failed = new IOException[1];
+            attendance.forEachDay((day, isPresent) -> {
+                if (failed[0] != null) return;
+                try {
+                    writeVarLong(zigzag(day - previous[0]) << 1 | (isPresent ? 1 : 0));
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+                previous[0] = day;
+            });
+            if (failed[0] != null) throw failed[0];
+
+            List<Attendance> others = attendance.overflowEntries();
+            writeVarLong(others.size());
+            for (Attendance a : others) {
+                writeString(a.getDate());
+                writeString(a.getStatus());
+            }
+        }
+
+        public void finish() throws IOException {
+            if (finished) return;
+            finished = true;
+            writeByte(END);
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            if (closeOut) out.close();
+        }
+
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(b.length + 1L);
+            if (b.length > buf.length - pos) {
+                flushBuffer();
+                if (b.length > buf.length) {
+                    out.write(b);
+                    return;
+                }
+            }
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        private void writeVarLong(long v) throws IOException {
+            if (buf.length - pos < 10) flushBuffer();
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void writeByte(int b) throws IOException {
+            if (pos == buf.length) flushBuffer();
+            buf[pos++] = (byte) b;
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    // Streams records in; next() returns null after the last one. The reader
+    // buffers ahead, so the stream is not positioned after the end marker.
+    public static class Reader implements Closeable {
+        private final InputStream in;
+        private final byte[] buf = new byte[BUFFER_BYTES];
+        private int pos;
+        private int limit;
+        private final List<String> subjects = new ArrayList<>();
+        private boolean ended;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = in;
+            for (byte b : MAGIC) {
+                if (readByte() != b) throw new IOException("Not a binary student file");
+            }
+            long format = readVarLong();
+            if (format != FORMAT_VERSION) throw new IOException("Unsupported binary student format " + format);
+        }
+
+        public Student next() throws IOException {
+            if (ended) return null;
+            int marker = readByte();
+            if (marker == END) {
+                ended = true;
+                return null;
+            }
+            if (marker != RECORD) throw new IOException("Corrupt binary student file");
+
+            Student s = new Student(readString(), readString(), readString(), readString());
+            s.setVersion(readVarLong());
+
+            int grades = (int) readVarLong();
+            GradeBook book = new GradeBook(grades);
+            for (int i = 0; i < grades; i++) {
+                int id = (int) readVarLong();
+                if (id == subjects.size()) subjects.add(readString());
+                else if (id > subjects.size()) throw new IOException("Corrupt binary student file");
+                book.add(subjects.get(id), (int) unzigzag(readVarLong()));
+            }
+            s.setGradeBook(book);
+
+            AttendanceBook attendance = new AttendanceBook();
+            long days = readVarLong();
+            long day = 0;
+            for (long i = 0; i < days; i++) {
+                long v = readVarLong();
+                day += unzigzag(v >>> 1);
+                attendance.putDay(day, (v & 1) != 0);
+            }
+            long others = readVarLong();
+            for (long i = 0; i < others; i++) attendance.put(readString(), readString());
+            s.setAttendanceBook(attendance);
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String readString() throws IOException {
+            long n = readVarLong();
+            if (n == 0) return null;
+            int len = (int) (n - 1);
+            if (limit - pos >= len) {
+                String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+                pos += len;
+                return s;
+            }
+            byte[] b = new byte[len];
+            int have = limit - pos;
+            System.arraycopy(buf, pos, b, 0, have);
+            pos = limit;
+            int off = have;
+            while (off < len) {
+                int r = in.read(b, off, len - off);
+                if (r < 0) throw new EOFException("Truncated binary student file");
+                off += r;
+            }
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        private long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Corrupt binary student file");
+        }
+
+        private int readByte() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("Truncated binary student file");
+                }
+            }
+            return buf[pos++] & 0xFF;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // Streaming: one record in memory at a time either way
+    public static long textToBinary(Path text, Path binary) throws IOException {
+        long count = 0;
+        try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.UTF_8);
+             Writer out = new Writer(Files.newOutputStream(binary))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                Student s = StudentRecordParser.parseStudentLine(line);
+                if (s == null) continue;
+                out.write(s);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static long binaryToText(Path binary, Path text) throws IOException {
+        long count = 0;
+        try (Reader in = new Reader(Files.newInputStream(binary));
+             BufferedWriter out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+            Student s;
+            while ((s = in.next()) != null) {
+                out.write(StudentRepository.serializeStudent(s));
+                out.write(System.lineSeparator());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("to-binary")) {
+            long start = System.nanoTime();
+            long n = textToBinary(Path.of(args[1]), Path.of(args[2]));
+            System.out.println(n + " students in " + (System.nanoTime() - start) / 1_000_000 + " ms -> " + args[2]);
+        } else if (args.length == 3 && args[0].equals("to-text")) {
+            long start = System.nanoTime();
+            long n = binaryToText(Path.of(args[1]), Path.of(args[2]));
+            System.out.println(n + " students in " + (System.nanoTime() - start) / 1_000_000 + " ms -> " + args[2]);
+        } else if (args.length == 2 && args[0].equals("bench")) {
+            bench(Path.of(args[1]));
+        } else {
+            System.err.println("Usage: java BinaryStudentFormat to-binary <master.txt> <out.bin>");
+            System.err.println("       java BinaryStudentFormat to-text <in.bin> <master.txt>");
+            System.err.println("       java BinaryStudentFormat bench <master.txt>");
+            System.exit(2);
+        }
+    }
+
+    // Full read (every column decoded) and full write of both layouts
+    private static void bench(Path master) throws IOException {
+        Path bin = Files.createTempFile("students", ".bin");
+        Path txt = Files.createTempFile("students", ".txt");
+        try {
+            List<Student> students = new ArrayList<>();
+            try (BufferedReader in = Files.newBufferedReader(master, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    Student s = line.isBlank() ? null : StudentRecordParser.parseStudentLine(line.trim());
+                    if (s == null) continue;
+                    // decoded, as students are after any change; encoded ones would be copied to text verbatim
+                    s.getGradeBook();
+                    s.getAttendanceBook();
+                    students.add(s);
+                }
+            }
+            textToBinary(master, bin);
+
+            for (int round = 0; round < 3; round++) {
+                long t0 = System.nanoTime();
+                try (BufferedWriter out = Files.newBufferedWriter(txt, StandardCharsets.UTF_8)) {
+                    for (Student s : students) {
+                        out.write(StudentRepository.serializeStudent(s));
+                        out.write(System.lineSeparator());
+                    }
+                }
+                long t1 = System.nanoTime();
+                try (Writer out = new Writer(Files.newOutputStream(bin))) {
+                    for (Student s : students) out.write(s);
+                }
+                long t2 = System.nanoTime();
+                long textRead = 0;
+                try (BufferedReader in = Files.newBufferedReader(txt, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        Student s = StudentRecordParser.parseStudentLine(line);
+                        textRead += s.getGradeBook().size() + s.getAttendanceBook().size();
+                    }
+                }
+                long t3 = System.nanoTime();
+                long binRead = 0;
+                try (Reader in = new Reader(Files.newInputStream(bin))) {
+                    Student s;
+                    while ((s = in.next()) != null) binRead += s.getGradeBook().size() + s.getAttendanceBook().size();
+                }
+                long t4 = System.nanoTime();
+                System.out.printf("write text %d ms, binary %d ms; read text %d ms, binary %d ms (%d/%d items)%n",
+                        (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000, (t3 - t2) / 1_000_000, (t4 - t3) / 1_000_000, textRead, binRead);
+            }
+            System.out.printf("%d students: text %d bytes, binary %d bytes%n", students.size(), Files.size(txt), Files.size(bin));
+        } finally {
+            Files.deleteIfExists(bin);
+            Files.deleteIfExists(txt);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Binary encoding of a transaction log (-Dsis.txnLog=binary), written through
+// LogAppender like the text logs: callers still append "ts|studentId|field|value"
+// lines and the encoder turns each into a record.
+//
+//   file   := magic "SIST" varint(formatVersion) record*
+//   record := varint(bodyLength) body crc32(body, 4 bytes big-endian)
+//   body   := flags zigzag(epochMicros - previous record's) ref(studentId)
+//             ref(field) value                       (flags & RAW == 0)
+//           | flags str(line)                        (flags & RAW: kept verbatim)
+//             (flags & RESTART: dictionary and timestamp base start over here)
+//   value  := zigzag(number)                        (flags & NUMBER)
+//           | ref(text)
+//   ref    := varint(id) into the file's string dictionary; an id equal to the
+//             dictionary size defines the next entry and is followed by str
+//   str    := varint(byteLength) UTF-8 bytes
+//
+// Timestamps are LocalDateTime.toString() stamps counted in microseconds as if
+// UTC; dumping prints them back the same way, to the microsecond. A file is
+// self-contained: its dictionary and timestamp base start empty, and each
+// rolled segment (TransactionLogSegments) is such a file. Records are only
+// understood in order from the file start or from a RESTART record, which the
+// writer puts about every RESTART_BYTES so that TransactionLogIndex can seek to
+// one; a record whose CRC fails ends the segment (a torn append), and the next
+// append to the file cuts it off first. Format 1 files (no restarts) still read.
+//
+// Headless: java BinaryTransactionLog dump <log.bin> [out.txt]
+//           java BinaryTransactionLog encode <log.txt> <log.bin>
+public class BinaryTransactionLog {
+    public static final String SUFFIX = ".bin";
+    // 2: RESTART records
+    public static final int FORMAT_VERSION = 2;
+    // Dictionary entries repeat after each restart: about 6% more bytes at this spacing
+    static final int RESTART_BYTES = 512 * 1024;
+    private static final byte[] MAGIC = {'S', 'I', 'S', 'T'};
+    private static final int HEADER_BYTES = MAGIC.length + 1;
+    private static final int NUMBER = 1;
+    private static final int RAW = 2;
+    private static final int RESTART = 4;
+
+    private BinaryTransactionLog() {}
+
+    public static boolean enabled() {
+        return System.getProperty("sis.txnLog", "text").equalsIgnoreCase("binary");
+    }
+
+    public static boolean isBinary(String path) {
+        return path.endsWith(SUFFIX);
+    }
+
+    // One decoded record; only valid inside visit()
+    public static class Record {
+        private long offset;
+        private long end;
+        private long epochMicros;
+        private String studentId;
+        private String field;
+        private boolean numeric;
+        private long number;
+        private String text;
+        private String rawLine;
+        private boolean restart;
+
+        public long getOffset() { return offset; }
+        public long getEnd() { return end; }
+        public long getEpochMicros() { return epochMicros; }
+        public String getStudentId() { return studentId; }
+        public String getField() { return field; }
+        public boolean isNumeric() { return numeric; }
+        public long getNumber() { return number; }
+        public String getText() { return text; }
+        // Non-null for lines that were stored verbatim (they did not parse)
+        public String getRawLine() { return rawLine; }
+        // Decoding can start at this record (first of the file or a RESTART)
+        public boolean isRestart() { return restart; }
+
+        public String toLine() {
+            if (rawLine != null) return rawLine;
+            return formatMicros(epochMicros) + "|" + studentId + "|" + field + "|" + (numeric ? Long.toString(number) : text);
+        }
+    }
+
+    public interface RecordVisitor {
+        void visit(Record record);
+    }
+
+    // Dictionary and timestamp base as of some position in a file
+    private static final class State {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        long previousMicros;
+        long end;
+        // file offset of the record the current dictionary started at
+        long restartAt;
+
+        void define(String s) {
+            ids.put(s, strings.size());
+            strings.add(s);
+        }
+
+        void restart(long offset) {
+            strings.clear();
+            ids.clear();
+            previousMicros = 0;
+            restartAt = offset;
+        }
+    }
+
+    // Visits the records at or after log position from, decoding each segment
+    // from its start
+    public static void read(String path, long from, RecordVisitor visitor) {
+        for (TransactionLogSegments.Segment s : TransactionLogSegments.forPath(path).segments()) {
+            if (s.getEnd() > from) readSegment(s, from, visitor);
+        }
+    }
+
+    // One segment, which decodes on its own; returns the log position after its
+    // last intact record
+    public static long readSegment(TransactionLogSegments.Segment segment, long from, RecordVisitor visitor) {
+        if (!segment.getFile().exists() && segment.isLive()) return segment.getBase();
+        try (InputStream in = segment.openAt(segment.getBase())) {
+            return segment.getBase() + decode(in, new State(), segment.getBase(), from, Long.MAX_VALUE, visitor);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + segment.getFile(), e);
+        }
+    }
+
+    // Decodes from a restart point: in is positioned at log position start of a
+    // segment based at base. Stops before the first record at or after limit;
+    // returns the log position where it stopped.
+    static long decodeFrom(InputStream in, long base, long start, long from, long limit, RecordVisitor visitor) throws IOException {
+        State state = new State();
+        state.end = start - base;
+        state.restartAt = state.end;
+        return base + decode(in, state, base, from, limit, visitor);
+    }
+
+    // Decodes records into state; stops at a torn or corrupt record and returns
+    // the end of the last good one. An empty stream is an empty log. Record
+    // offsets are reported as log positions, base being the file's first.
+    private static long decode(InputStream in, State state, long base, long from, long limit, RecordVisitor visitor) throws IOException {
+        CountingInput input = new CountingInput(in, state.end);
+        if (state.end == 0) {
+            for (byte b : MAGIC) {
+                int c = input.read();
+                if (c < 0) return 0;
+                if (c != b) throw new IOException("Not a binary transaction log");
+            }
+            int format = input.read();
+            if (format < 0) return 0;
+            if (format < 1 || format > FORMAT_VERSION) throw new IOException("Unsupported transaction log format " + format);
+            state.end = input.position;
+            state.restartAt = state.end;
+        }
+
+        Record record = new Record();
+        CRC32 crc = new CRC32();
+        while (base + input.position < limit) {
+            long start = input.position;
+            byte[] body;
+            try {
+                long length = input.readVarLong();
+                if (length > Integer.MAX_VALUE) break;
+                body = input.readFully((int) length);
+                byte[] sum = input.readFully(4);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != ByteBuffer.wrap(sum).getInt()) break;
+            } catch (EOFException e) {
+                break;
+            }
+
+            Body b = new Body(body);
+            int flags = b.readByte();
+            if ((flags & RESTART) != 0) state.restart(start);
+            record.offset = base + start;
+            record.end = base + input.position;
+            record.restart = start == state.restartAt;
+            record.rawLine = null;
+            if ((flags & RAW) != 0) {
+                record.rawLine = b.readString();
+            } else {
+                state.previousMicros += unzigzag(b.readVarLong());
+                record.epochMicros = state.previousMicros;
+                record.studentId = readRef(b, state);
+                record.field = readRef(b, state);
+                record.numeric = (flags & NUMBER) != 0;
+                if (record.numeric) {
+                    record.number = unzigzag(b.readVarLong());
+                    record.text = null;
+                } else {
+                    record.text = readRef(b, state);
+                }
+            }
+            state.end = input.position;
+            if (visitor != null && base + start >= from) visitor.visit(record);
+        }
+        return state.end;
+    }
+
+    private static String readRef(Body b, State state) throws IOException {
+        int id = (int) b.readVarLong();
+        if (id == state.strings.size()) {
+            String s = b.readString();
+            state.define(s);
+            return s;
+        }
+        if (id > state.strings.size()) throw new IOException("Corrupt transaction log dictionary");
+        return state.strings.get(id);
+    }
+
+    // Per-file encoder used by LogAppender. It runs under the file's exclusive
+    // lock; another process may have appended since, so it first catches up on
+    // whatever lies past the last record it knows about.
+    static final class Encoder implements LogAppender.LineEncoder {
+        private final Path path;
+        private final State state = new State();
+
+        Encoder(String path) {
+            this.path = Path.of(path);
+        }
+
+        @Override
+        public void fileChanged() {
+            state.restart(0);
+            state.end = 0;
+        }
+
+        @Override
+        public ByteBuffer encode(List<String> lines, FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size != state.end) catchUp(channel, size);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(lines.size() * 24 + HEADER_BYTES);
+            if (state.end == 0) {
+                out.write(MAGIC);
+                out.write(FORMAT_VERSION);
+                state.restartAt = HEADER_BYTES;
+            }
+            Body body = new Body(64);
+            CRC32 crc = new CRC32();
+            for (String line : lines) {
+                body.reset();
+                long offset = state.end + out.size();
+                boolean restart = offset - state.restartAt >= RESTART_BYTES;
+                if (restart) state.restart(offset);
+                encodeLine(line, body, restart ? RESTART : 0);
+                writeVarLong(out, body.length);
+                out.write(body.bytes, 0, body.length);
+                crc.reset();
+                crc.update(body.bytes, 0, body.length);
+                int sum = (int) crc.getValue();
+                out.write(sum >>> 24);
+                out.write(sum >>> 16);
+                out.write(sum >>> 8);
+                out.write(sum);
+            }
+            state.end += out.size();
+            return ByteBuffer.wrap(out.toByteArray());
+        }
+
+        private void catchUp(FileChannel channel, long size) throws IOException {
+            // truncated under us: start over from the file as it is
+            if (size < state.end) fileChanged();
+            try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+                reader.position(state.end);
+                decode(new BufferedInputStream(Channels.newInputStream(reader), 1 << 16), state, 0, Long.MAX_VALUE, Long.MAX_VALUE, null);
+            }
+            if (state.end < size) {
+                System.err.println("Cutting torn transaction log tail: " + path + " at " + state.end + " of " + size);
+                channel.truncate(state.end);
+            }
+        }
+
+        private void encodeLine(String line, Body out, int restart) {
+            int p1 = line.indexOf('|');
+            int p2 = p1 < 0 ? -1 : line.indexOf('|', p1 + 1);
+            int p3 = line.lastIndexOf('|');
+            long micros = p1 < 0 ? Long.MIN_VALUE : parseMicros(line.substring(0, p1).trim());
+            if (p2 < 0 || p3 < p2 || micros == Long.MIN_VALUE) {
+                out.writeByte(RAW | restart);
+                out.writeString(line);
+                return;
+            }
+            String id = line.substring(p1 + 1, p2).trim();
+            String field = line.substring(p2 + 1, p3).trim();
+            String value = line.substring(p3 + 1).trim();
+            Long number = parseNumber(value);
+
+            out.writeByte((number != null ? NUMBER : 0) | restart);
+            out.writeVarLong(zigzag(micros - state.previousMicros));
+            state.previousMicros = micros;
+            writeRef(out, id);
+            writeRef(out, field);
+            if (number != null) out.writeVarLong(zigzag(number));
+            else writeRef(out, value);
+        }
+
+        private void writeRef(Body out, String s) {
+            Integer id = state.ids.get(s);
+            if (id != null) {
+                out.writeVarLong(id);
+                return;
+            }
+            out.writeVarLong(state.strings.size());
+            out.writeString(s);
+            state.define(s);
+        }
+    }
+
+    // Canonical integers only, so printing the number gives back the same text
+    private static Long parseNumber(String s) {
+        if (s.isEmpty() || s.length() > 18) return null;
+        try {
+            long v = Long.parseLong(s);
+            return Long.toString(v).equals(s) ? v : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Same reading as the text replay, so both logs order entries alike
+    static long parseMicros(String ts) {
+        byte[] b = ts.getBytes(StandardCharsets.ISO_8859_1);
+        return TransactionLogReplayer.timestampKey(b, 0, b.length);
+    }
+
+    static String formatMicros(long micros) {
+        return toDateTime(micros).toString();
+    }
+
+    // Log timestamps are local times counted as if they were UTC
+    public static long toMicros(LocalDateTime t) {
+        return t.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + t.getNano() / 1000;
+    }
+
+    public static LocalDateTime toDateTime(long micros) {
+        long seconds = Math.floorDiv(micros, 1_000_000);
+        int nanos = Math.floorMod(micros, 1_000_000) * 1000;
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    // A record body being built or read
+    private static final class Body {
+        byte[] bytes;
+        int length;
+        int pos;
+
+        Body(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        Body(byte[] content) {
+            this.bytes = content;
+            this.length = content.length;
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        void writeByte(int b) {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte) b;
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        void writeString(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(b.length);
+            if (length + b.length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + b.length));
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= length) throw new IOException("Corrupt transaction log record");
+            return bytes[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Corrupt transaction log record");
+        }
+
+        String readString() throws IOException {
+            int n = (int) readVarLong();
+            if (n < 0 || pos + n > length) throw new IOException("Corrupt transaction log record");
+            String s = new String(bytes, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+    }
+
+    // Tracks the file position of a stream being decoded
+    private static final class CountingInput {
+        final InputStream in;
+        long position;
+
+        CountingInput(InputStream in, long position) {
+            this.in = in;
+            this.position = position;
+        }
+
+        int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) position++;
+            return b;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                if (b < 0) throw new EOFException();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new EOFException();
+        }
+
+        byte[] readFully(int n) throws IOException {
+            byte[] b = in.readNBytes(n);
+            position += b.length;
+            if (b.length < n) throw new EOFException();
+            return b;
+        }
+    }
+
+    private static boolean endsTorn(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            if (ch.size() == 0) return false;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            ch.read(last, ch.size() - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 2 || args.length == 3) && args[0].equals("dump")) {
+            PrintStream out = args.length == 3
+                    ? new PrintStream(Files.newOutputStream(Path.of(args[2])), false, StandardCharsets.UTF_8)
+                    : new PrintStream(System.out, false, StandardCharsets.UTF_8);
+            for (TransactionLogSegments.Segment s : TransactionLogSegments.forPath(args[1]).segments()) {
+                long end = readSegment(s, 0, r -> out.println(r.toLine()));
+                if (end < s.getEnd()) System.err.println("Stopped at a torn or corrupt record in " + s + " at " + end);
+            }
+            out.flush();
+            if (args.length == 3) out.close();
+        } else if (args.length == 3 && args[0].equals("encode")) {
+            long lines = 0;
+            Encoder encoder = new Encoder(args[2]);
+            Files.deleteIfExists(Path.of(args[2]));
+            try (BufferedReader in = Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8);
+                 FileChannel ch = FileChannel.open(Path.of(args[2]), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                List<String> batch = new ArrayList<>();
+                // a last line without its newline is a torn append, which the text replay skips too
+                boolean torn = endsTorn(Path.of(args[1]));
+                String line = in.readLine();
+                while (line != null) {
+                    String next = in.readLine();
+                    if (next == null && torn) break;
+                    if (!line.isBlank()) batch.add(line);
+                    line = next;
+                    if (batch.size() == 10000) {
+                        ByteBuffer buf = encoder.encode(batch, ch);
+                        while (buf.hasRemaining()) ch.write(buf);
+                        lines += batch.size();
+                        batch.clear();
+                    }
+                }
+                ByteBuffer buf = encoder.encode(batch, ch);
+                while (buf.hasRemaining()) ch.write(buf);
+                lines += batch.size();
+            }
+            System.out.println(lines + " lines: " + Files.size(Path.of(args[1])) + " -> " + Files.size(Path.of(args[2])) + " bytes");
+        } else {
+            System.err.println("Usage: java BinaryTransactionLog dump <log.bin> [out.txt]");
+            System.err.println("       java BinaryTransactionLog encode <log.txt> <log.bin>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+// Streaming CSV import of students, grades or attendance. The file is read in
+// chunks; rows of a chunk are parsed and checked in parallel, then the chunk
+// goes through StudentService.applyBatch, so each chunk costs one append per
+// transaction log and one master write. Given a BatchingMutationExecutor, a
+// chunk is submitted as one unit and the next chunk is read and parsed while
+// the executor applies it. Memory stays bounded by two chunks whatever the
+// file size.
+//
+// Accepted layouts (header row optional, columns matched by name when present):
+//   students:   studentId,name,username,password
+//   grades:     studentId,subject,score
+//   attendance: studentId,date,status
+//
+// Headless: java CsvImporter <file.csv> [students|grades|attendance]
+public class CsvImporter {
+    public static final int DEFAULT_CHUNK_ROWS = 10000;
+    // Only the first errors are kept for reporting; the rest are counted
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    public enum Kind {
+        STUDENTS("studentid", "name", "username", "password"),
+        GRADES("studentid", "subject", "score"),
+        ATTENDANCE("studentid", "date", "status");
+
+        private final String[] columns;
+
+        Kind(String... columns) {
+            this.columns = columns;
+        }
+
+        public static Kind parse(String s) {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() { return line; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    public static class Report {
+        private final Kind kind;
+        private long rows;
+        private long imported;
+        private long failed;
+        private final List<RowError> errors = new ArrayList<>();
+
+        Report(Kind kind) {
+            this.kind = kind;
+        }
+
+        public Kind getKind() { return kind; }
+        public long getRows() { return rows; }
+        public long getImported() { return imported; }
+        public long getFailed() { return failed; }
+        public List<RowError> getErrors() { return errors; }
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(line, message));
+        }
+
+        public String summary() {
+            return kind.name().toLowerCase(Locale.ROOT) + ": " + rows + " rows, " + imported + " imported, " + failed + " failed";
+        }
+    }
+
+    private final StudentService studentService;
+    private final BatchingMutationExecutor executor;
+    private final int chunkRows;
+
+    public CsvImporter(StudentService studentService) {
+        this(studentService, null, DEFAULT_CHUNK_ROWS);
+    }
+
+    public CsvImporter(StudentService studentService, BatchingMutationExecutor executor) {
+        this(studentService, executor, DEFAULT_CHUNK_ROWS);
+    }
+
+    // executor may be null to apply each chunk directly
+    public CsvImporter(StudentService studentService, BatchingMutationExecutor executor, int chunkRows) {
+        this.studentService = studentService;
+        this.executor = executor;
+        this.chunkRows = chunkRows;
+    }
+
+    // A chunk handed to the executor, reported once its results are in
+    private static class Submitted {
+        final List<CompletableFuture<MutationResult>> results;
+        final List<Long> lines;
+
+        Submitted(List<CompletableFuture<MutationResult>> results, List<Long> lines) {
+            this.results = results;
+            this.lines = lines;
+        }
+    }
+
+    private Submitted inFlight;
+
+    // kind may be null when the file has a header row to detect it from
+    public Report importFile(Path file, Kind kind) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, kind);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + file, e);
+        }
+    }
+
+    public Report importFrom(BufferedReader reader, Kind kind) throws IOException {
+        String first = reader.readLine();
+        long lineNo = 1;
+        if (first != null && first.startsWith("\uFEFF")) first = first.substring(1);
+
+        int[] columnMap = null;
+        List<String> header = first == null ? List.of() : parseCsvLine(first);
+        Kind detected = detectKind(header);
+        if (detected != null) {
+            if (kind != null && kind != detected) {
+                throw new IllegalArgumentException("File header is for " + detected + ", not " + kind);
+            }
+            kind = detected;
+            columnMap = mapColumns(kind, header);
+            first = null;
+        } else if (kind == null) {
+            throw new IllegalArgumentException("No header row; pass the kind (students, grades or attendance)");
+        }
+
+        Report report = new Report(kind);
+        List<String> lines = new ArrayList<>(chunkRows);
+        long chunkStart = lineNo;
+        if (first != null) lines.add(first);
+        else chunkStart = lineNo + 1;
+
+        String line;
+        inFlight = null;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            lines.add(line);
+            if (lines.size() >= chunkRows) {
+                importChunk(kind, columnMap, lines, chunkStart, report);
+                lines.clear();
+                chunkStart = lineNo + 1;
+            }
+        }
+        if (!lines.isEmpty()) importChunk(kind, columnMap, lines, chunkStart, report);
+        awaitInFlight(report);
+        return report;
+    }
+
+    private void importChunk(Kind kind, int[] columnMap, List<String> lines, long firstLineNo, Report report) {
+        // rows are independent, so parsing and field checks run in parallel
+        Object[] parsed = new Object[lines.size()];
+        IntStream.range(0, lines.size()).parallel()
+                .forEach(i -> parsed[i] = toMutation(kind, columnMap, lines.get(i)));
+
+        List<Mutation> batch = new ArrayList<>(lines.size());
+        List<Long> batchLines = new ArrayList<>(lines.size());
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i] == null) continue; // blank line
+            report.rows++;
+            if (parsed[i] instanceof String) {
+                report.fail(firstLineNo + i, (String) parsed[i]);
+            } else {
+                batch.add((Mutation) parsed[i]);
+                batchLines.add(firstLineNo + i);
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        // store-level checks (existence, duplicates) and the writes happen in applyBatch
+        if (executor == null) {
+            report(studentService.applyBatch(batch), batchLines, report);
+            return;
+        }
+        // units apply in submission order, so the previous chunk lands first
+        Submitted submitted = new Submitted(executor.submitAll(batch), batchLines);
+        awaitInFlight(report);
+        inFlight = submitted;
+    }
+
+    private void awaitInFlight(Report report) {
+        if (inFlight == null) return;
+        List<MutationResult> results = new ArrayList<>(inFlight.results.size());
+        for (CompletableFuture<MutationResult> f : inFlight.results) results.add(f.join());
+        report(results, inFlight.lines, report);
+        inFlight = null;
+    }
+
+    private static void report(List<MutationResult> results, List<Long> batchLines, Report report) {
+        for (int i = 0; i < results.size(); i++) {
+            MutationResult r = results.get(i);
+            if (r.isSuccess()) report.imported++;
+            else report.fail(batchLines.get(i), r.getMessage());
+        }
+    }
+
+    // A Mutation, an error message for a bad row, or null for a blank line
+    private static Object toMutation(Kind kind, int[] columnMap, String line) {
+        if (line.isBlank()) return null;
+        List<String> raw = parseCsvLine(line);
+        int needed = kind.columns.length;
+        String[] f = new String[needed];
+        for (int c = 0; c < needed; c++) {
+            int src = columnMap == null ? c : columnMap[c];
+            f[c] = src < raw.size() ? raw.get(src).trim() : "";
+        }
+        if (f[0].isEmpty()) return "Student ID is required";
+
+        switch (kind) {
+            case STUDENTS:
+                if (f[2].isEmpty()) return "Username is required";
+                if (f[3].isEmpty()) return "Password is required";
+                return Mutation.addStudent(f[0], f[1], f[2], f[3]);
+            case GRADES:
+                if (f[1].isEmpty()) return "Subject is required";
+                int score;
+                try {
+                    score = Integer.parseInt(f[2]);
+                } catch (NumberFormatException e) {
+                    return "Score must be a valid number: " + f[2];
+                }
+                if (score < 0 || score > 100) return "Score must be between 0 and 100";
+                return Mutation.assignGrade(f[0], f[1], score);
+            default:
+                if (AttendanceBook.epochDay(f[1]) == Long.MIN_VALUE) return "Date must be in YYYY-MM-DD format: " + f[1];
+                if (!f[2].equalsIgnoreCase(AttendanceBook.PRESENT) && !f[2].equalsIgnoreCase(AttendanceBook.ABSENT)) {
+                    return "Status must be Present or Absent";
+                }
+                return Mutation.markAttendance(f[0], f[1], f[2]);
+        }
+    }
+
+    private static Kind detectKind(List<String> header) {
+        List<String> names = new ArrayList<>();
+        for (String h : header) names.add(normalize(h));
+        for (Kind k : new Kind[]{Kind.STUDENTS, Kind.GRADES, Kind.ATTENDANCE}) {
+            boolean all = true;
+            for (String c : k.columns) {
+                if (!names.contains(c)) all = false;
+            }
+            if (all) return k;
+        }
+        return null;
+    }
+
+    private static int[] mapColumns(Kind kind, List<String> header) {
+        int[] map = new int[kind.columns.length];
+        for (int c = 0; c < map.length; c++) {
+            for (int h = 0; h < header.size(); h++) {
+                if (normalize(header.get(h)).equals(kind.columns[c])) {
+                    map[c] = h;
+                    break;
+                }
+            }
+        }
+        return map;
+    }
+
+    // "Student ID", "student_id" and "studentId" all name the same column
+    private static String normalize(String column) {
+        StringBuilder sb = new StringBuilder(column.length());
+        for (int i = 0; i < column.length(); i++) {
+            char ch = column.charAt(i);
+            if (Character.isLetterOrDigit(ch)) sb.append(Character.toLowerCase(ch));
+        }
+        return sb.toString();
+    }
+
+    // Comma separated; fields may be quoted, with "" for a literal quote
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java CsvImporter <file.csv> [students|grades|attendance]");
+            System.exit(2);
+        }
+        DataPaths.ensureDataFiles();
+        Kind kind = args.length == 2 ? Kind.parse(args[1]) : null;
+
+        long start = System.nanoTime();
+        StudentService service = new StudentService(new StudentRepository());
+        BatchingMutationExecutor executor = new BatchingMutationExecutor(service);
+        Report report;
+        try {
+            report = new CsvImporter(service, executor).importFile(Path.of(args[0]), kind);
+        } finally {
+            executor.close();
+        }
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        for (RowError e : report.getErrors()) System.err.println(e);
+        if (report.getFailed() > report.getErrors().size()) {
+            System.err.println("... " + (report.getFailed() - report.getErrors().size()) + " more errors");
+        }
+        System.out.println(report.summary() + " in " + ms + " ms");
+        System.exit(report.getFailed() == 0 ? 0 : 1);
+    }
+}
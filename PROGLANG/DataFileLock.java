@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Coordinates access to one data file between threads of this process and
+// between processes sharing the data directory. The OS lock is taken on a
+// sidecar "<file>.lock" so the data file itself can be renamed over.
+//
+// FileChannel locks are held per process and throw OverlappingFileLockException
+// when taken twice, so threads first go through an in-process read/write lock:
+// the first reader takes the shared OS lock for all concurrent readers and the
+// last one releases it; a writer holds the exclusive OS lock alone.
+//
+// Every acquisition stamps "pid|host|millis" at the start of the sidecar, and
+// a background thread re-stamps locks that are still held every third of the
+// stale timeout. A lock that cannot be had within the wait timeout is broken
+// only if its stamp has stopped being refreshed and either names a dead
+// process on this host, or comes from another host and is older than the stale
+// timeout (the OS normally drops a crashed process's locks, but network shares
+// can keep them). A live process on this host is never broken, however long it
+// holds the lock. Breaking deletes the sidecar; a process that opened the old
+// one around the break sees its file key change and retries, but a holder
+// that was wrongly declared dead is not told, which is what the refreshed
+// stamp guards against.
+public class DataFileLock {
+    private static final Map<String, DataFileLock> LOCKS = new HashMap<>();
+    private static final String SUFFIX = ".lock";
+    // The locked byte lies past the stamp so the stamp stays readable on
+    // platforms with mandatory byte-range locks
+    private static final long LOCK_POSITION = 1L << 20;
+    private static final int STAMP_BYTES = 128;
+    private static final String HOST = hostName();
+    private static final String OWNER = ProcessHandle.current().pid() + "|" + HOST;
+    // Locks held by this process, re-stamped by the refresher thread
+    private static final Set<Held> HELD = ConcurrentHashMap.newKeySet();
+    private static Thread refresher;
+
+    private final Path lockFile;
+    private final long waitMs;
+    private final long staleMs;
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+
+    // Shared OS lock, held while readers > 0; guarded by this
+    private int readers;
+    private Held shared;
+    // Exclusive OS lock, only touched by the thread holding local's write lock
+    private Held exclusive;
+
+    private static class Held {
+        final FileChannel channel;
+        final FileLock lock;
+        final long refreshMs;
+        volatile long stampedAt = System.currentTimeMillis();
+
+        Held(FileChannel channel, FileLock lock, long refreshMs) {
+            this.channel = channel;
+            this.lock = lock;
+            this.refreshMs = refreshMs;
+        }
+    }
+
+    public static synchronized DataFileLock forPath(String path) {
+        String key = new File(path).getAbsolutePath();
+        return LOCKS.computeIfAbsent(key, k -> new DataFileLock(path, defaultWaitMs(), defaultStaleMs()));
+    }
+
+    // -Dsis.lockWaitMs=N, -Dsis.lockStaleMs=N
+    public static long defaultWaitMs() {
+        return Long.getLong("sis.lockWaitMs", 2000L);
+    }
+
+    public static long defaultStaleMs() {
+        return Long.getLong("sis.lockStaleMs", 30000L);
+    }
+
+    public static String lockFileFor(String path) {
+        return path + SUFFIX;
+    }
+
+    public DataFileLock(String path, long waitMs, long staleMs) {
+        this.lockFile = Path.of(lockFileFor(path));
+        this.waitMs = waitMs;
+        this.staleMs = staleMs;
+    }
+
+    public void shared(Runnable action) {
+        shared(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T shared(Supplier<T> action) {
+        // a writer reading its own file already excludes everyone else
+        if (local.isWriteLockedByCurrentThread()) return action.get();
+
+        local.readLock().lock();
+        try {
+            synchronized (this) {
+                if (readers == 0) shared = acquire(true);
+                readers++;
+            }
+            try {
+                return action.get();
+            } finally {
+                synchronized (this) {
+                    if (--readers == 0) {
+                        release(shared);
+                        shared = null;
+                    }
+                }
+            }
+        } finally {
+            local.readLock().unlock();
+        }
+    }
+
+    public void exclusive(Runnable action) {
+        exclusive(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T exclusive(Supplier<T> action) {
+        if (local.isWriteLockedByCurrentThread()) return action.get();
+
+        local.writeLock().lock();
+        try {
+            exclusive = acquire(false);
+            try {
+                return action.get();
+            } finally {
+                release(exclusive);
+                exclusive = null;
+            }
+        } finally {
+            local.writeLock().unlock();
+        }
+    }
+
+    private Held acquire(boolean sharedMode) {
+        long deadline = System.currentTimeMillis() + waitMs;
+        long backoffMs = 1;
+        while (true) {
+            Held held = tryAcquire(sharedMode);
+            if (held != null) return held;
+
+            if (System.currentTimeMillis() >= deadline) {
+                if (!breakIfStale()) {
+                    throw new RuntimeException("Timed out waiting for lock: " + lockFile + " (held by " + readStamp() + ")");
+                }
+                deadline = System.currentTimeMillis() + waitMs;
+                continue;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for lock: " + lockFile, e);
+            }
+            backoffMs = Math.min(backoffMs * 2, 50);
+        }
+    }
+
+    // Null while another process holds a conflicting lock
+    private Held tryAcquire(boolean sharedMode) {
+        FileChannel ch = null;
+        try {
+            Object before = fileKey();
+            ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock = ch.tryLock(LOCK_POSITION, 1, sharedMode);
+            if (lock == null) {
+                ch.close();
+                return null;
+            }
+            // the sidecar was replaced by a stale-lock break around our open; the
+            // file we hold may no longer be the one others lock, so go again
+            Object after = fileKey();
+            if (!Objects.equals(before, after)) {
+                lock.release();
+                ch.close();
+                return null;
+            }
+            writeStamp(ch);
+            Held held = new Held(ch, lock, refreshMs());
+            HELD.add(held);
+            startRefresher();
+            return held;
+        } catch (IOException e) {
+            if (ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException ignored) {}
+            }
+            throw new RuntimeException("Cannot lock file: " + lockFile, e);
+        }
+    }
+
+    private void release(Held held) {
+        if (held == null) return;
+        HELD.remove(held);
+        try {
+            held.lock.release();
+            held.channel.close();
+        } catch (IOException ignored) {
+            // closing the channel drops the lock either way
+        }
+    }
+
+    private boolean breakIfStale() {
+        String stamp = readStamp();
+        String[] parts = stamp.split("\\|");
+        if (parts.length != 3) return false;
+
+        boolean stale;
+        try {
+            long pid = Long.parseLong(parts[0]);
+            long age = System.currentTimeMillis() - Long.parseLong(parts[2]);
+            if (parts[1].equals(HOST)) {
+                // other live holders of a shared lock re-stamp it within refreshMs
+                boolean dead = ProcessHandle.of(pid).map(p -> !p.isAlive()).orElse(true);
+                stale = dead && age > refreshMs();
+            } else {
+                stale = age > staleMs;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (!stale) return false;
+
+        System.err.println("Breaking stale lock " + lockFile + " held by " + stamp);
+        try {
+            Files.deleteIfExists(lockFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot break stale lock: " + lockFile, e);
+        }
+        return true;
+    }
+
+    private long refreshMs() {
+        return Math.max(1, staleMs / 3);
+    }
+
+    private static synchronized void startRefresher() {
+        if (refresher != null) return;
+        refresher = new Thread(DataFileLock::refreshLoop, "data-file-lock-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    private static void refreshLoop() {
+        long tickMs = Math.max(1, Math.min(1000, defaultStaleMs() / 3));
+        while (true) {
+            try {
+                Thread.sleep(tickMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (Held held : HELD) {
+                if (now - held.stampedAt < held.refreshMs) continue;
+                try {
+                    writeStamp(held.channel);
+                    held.stampedAt = now;
+                } catch (IOException ignored) {
+                    // released (channel closed) since it was listed
+                }
+            }
+        }
+    }
+
+    private static void writeStamp(FileChannel ch) throws IOException {
+        // fixed width and blank padded, so stamps from concurrent shared holders overwrite each other whole
+        String stamp = String.format("%-" + STAMP_BYTES + "s", OWNER + "|" + System.currentTimeMillis());
+        ch.write(ByteBuffer.wrap(stamp.getBytes(StandardCharsets.UTF_8)), 0);
+    }
+
+    private String readStamp() {
+        try {
+            byte[] bytes = Files.readAllBytes(lockFile);
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    // Identifies the sidecar across a delete/recreate; null where the platform has no file keys
+    private Object fileKey() {
+        try {
+            return Files.readAttributes(lockFile, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // This host as it appears in lock stamps
+    public static String host() {
+        return HOST;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            String name = ManagementFactory.getRuntimeMXBean().getName();
+            return name.substring(name.indexOf('@') + 1);
+        }
+    }
+}
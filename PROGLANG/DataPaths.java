@@ -6,14 +6,27 @@ public class DataPaths {
     public static final String ADMINS_MASTER = DATA_DIR + File.separator + "admins_master.txt";
     public static final String GRADES_TXN = DATA_DIR + File.separator + "grades_transactions.txt";
     public static final String ATTEND_TXN = DATA_DIR + File.separator + "attendance_transactions.txt";
+    public static final String GRADES_TXN_BIN = DATA_DIR + File.separator + "grades_transactions" + BinaryTransactionLog.SUFFIX;
+    public static final String ATTEND_TXN_BIN = DATA_DIR + File.separator + "attendance_transactions" + BinaryTransactionLog.SUFFIX;
+    public static final String STUDENT_SEGMENTS_DIR = DATA_DIR + File.separator + "student_segments";
+    public static final String STUDENTS_SNAPSHOT = DATA_DIR + File.separator + "students.snapshot";
+
+    // The logs in use: the binary ones with -Dsis.txnLog=binary, else the text ones
+    public static String gradesLog() {
+        return BinaryTransactionLog.enabled() ? GRADES_TXN_BIN : GRADES_TXN;
+    }
+
+    public static String attendanceLog() {
+        return BinaryTransactionLog.enabled() ? ATTEND_TXN_BIN : ATTEND_TXN;
+    }
 
     public static void ensureDataFiles() {
         File dir = new File(DATA_DIR);
         if (!dir.exists()) dir.mkdirs();
 
         FileHandler.ensureFileExists(STUDENTS_MASTER);
-        FileHandler.ensureFileExists(GRADES_TXN);
-        FileHandler.ensureFileExists(ATTEND_TXN);
+        FileHandler.ensureFileExists(gradesLog());
+        FileHandler.ensureFileExists(attendanceLog());
 
         // Ensure admins file exists with a default admin
         if (!new File(ADMINS_MASTER).exists()) {
@@ -1,7 +1,12 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,33 +25,117 @@ public class FileHandler {
         }
     }
 
+    // Reads under the file's shared lock, so a concurrent append (from this or
+    // another process sharing the data directory) is never seen half-written.
     public static List<String> readAllLines(String path) {
         ensureFileExists(path);
-        try {
-            return Files.readAllLines(Path.of(path), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            return new ArrayList<>();
-        }
+        return DataFileLock.forPath(path).shared(() -> {
+            try {
+                return Files.readAllLines(Path.of(path), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return new ArrayList<>();
+            }
+        });
     }
 
     public static void writeAllLines(String path, List<String> lines) {
+        replaceAllLines(path, lines);
+    }
+
+    // Writes to a sibling temp file and renames it over the target, so readers and
+    // crashes never observe a half-written file. Only the rename runs under the
+    // file's exclusive lock; the temp name is unique to this process and thread.
+    public static void replaceAllLines(String path, List<String> lines) {
+        replaceFile(path, out -> writeLines(out, lines));
+    }
+
+    private static void writeLines(OutputStream out, List<String> lines) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (String line : lines) {
+            w.write(line);
+            w.write(System.lineSeparator());
+        }
+        w.flush();
+    }
+
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // replaceAllLines for any content, e.g. binary files
+    public static void replaceFile(String path, ContentWriter content) {
+        moveIntoPlace(writeTemp(path, content), path);
+    }
+
+    // The two halves of replaceFile, for callers that must re-check something
+    // under the file's lock before the rename: writeTemp writes the sibling temp
+    // file, then moveIntoPlace renames it over path or discardTemp drops it.
+    public static Path tempFileFor(String path) {
+        return Path.of(path + "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId() + ".tmp");
+    }
+
+    public static Path writeTemp(String path, ContentWriter content) {
         ensureFileExists(path);
-        try {
-            Files.write(Path.of(path), lines, StandardCharsets.UTF_8);
+        Path tmp = tempFileFor(path);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            content.writeTo(out);
         } catch (IOException e) {
+            discardTemp(tmp);
             throw new RuntimeException("Cannot write file: " + path, e);
         }
+        return tmp;
+    }
+
+    public static Path writeTempLines(String path, List<String> lines) {
+        return writeTemp(path, out -> writeLines(out, lines));
+    }
+
+    public static void moveIntoPlace(Path tmp, String path) {
+        DataFileLock.forPath(path).exclusive(() -> {
+            try {
+                try {
+                    Files.move(tmp, Path.of(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot replace file: " + path, e);
+            }
+        });
+    }
+
+    public static void discardTemp(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException ignored) {
+            // a leftover temp file is overwritten by the next write from this thread
+        }
     }
 
+    // Returns once the lines have reached the requested durability level. The
+    // transaction logs go through their long-lived group-commit appender; any
+    // other file (admins, student segments) is appended directly, so it holds no
+    // thread or channel once written. Both write under the file's exclusive lock.
     public static void appendLine(String path, String line) {
-        ensureFileExists(path);
-        try (FileOutputStream fos = new FileOutputStream(path, true);
-             OutputStreamWriter osw = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
-             BufferedWriter bw = new BufferedWriter(osw)) {
-            bw.write(line);
-            bw.newLine();
-        } catch (IOException e) {
-            throw new RuntimeException("Cannot append file: " + path, e);
+        appendLines(path, List.of(line), LogAppender.defaultDurability());
+    }
+
+    public static void appendLines(String path, List<String> lines, LogAppender.Durability durability) {
+        if (TransactionLogSegments.rolls(path)) {
+            LogAppender.forPath(path).append(lines, durability);
+            return;
         }
+        ensureFileExists(path);
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append(System.lineSeparator());
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        DataFileLock.forPath(path).exclusive(() -> {
+            try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (buf.hasRemaining()) channel.write(buf);
+                if (durability != LogAppender.Durability.OS_BUFFERED) channel.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot append file: " + path, e);
+            }
+        });
     }
 }
@@ -0,0 +1,113 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compact grade storage for one student: parallel arrays of subject ids (see
+// SubjectDictionary) and scores, in insertion order.
+public class GradeBook {
+    private int[] subjectIds;
+    private int[] scores;
+    private int size;
+
+    public GradeBook() {
+        this(4);
+    }
+
+    public GradeBook(int capacity) {
+        this.subjectIds = new int[Math.max(1, capacity)];
+        this.scores = new int[Math.max(1, capacity)];
+    }
+
+    public static GradeBook of(List<Grade> grades) {
+        GradeBook book = new GradeBook(grades.size());
+        for (Grade g : grades) book.add(g.getSubject(), g.getScore());
+        return book;
+    }
+
+    public int size() { return size; }
+    public String subjectAt(int i) { return SubjectDictionary.name(subjectIds[i]); }
+    public int scoreAt(int i) { return scores[i]; }
+
+    public void add(String subject, int score) {
+        if (size == subjectIds.length) {
+            subjectIds = Arrays.copyOf(subjectIds, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        subjectIds[size] = SubjectDictionary.intern(subject);
+        scores[size] = score;
+        size++;
+    }
+
+    public void set(int i, String subject, int score) {
+        subjectIds[i] = SubjectDictionary.intern(subject);
+        scores[i] = score;
+    }
+
+    public void remove(int i) {
+        System.arraycopy(subjectIds, i + 1, subjectIds, i, size - i - 1);
+        System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+        size--;
+    }
+
+    public int indexOfSubjectIgnoreCase(String subject) {
+        for (int i = 0; i < size; i++) {
+            if (subjectAt(i).equalsIgnoreCase(subject)) return i;
+        }
+        return -1;
+    }
+
+    public GradeBook copy() {
+        GradeBook c = new GradeBook(size);
+        System.arraycopy(subjectIds, 0, c.subjectIds, 0, size);
+        System.arraycopy(scores, 0, c.scores, 0, size);
+        c.size = size;
+        return c;
+    }
+
+    // subject:score,subject:score
+    public void appendCsv(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(subjectAt(i)).append(':').append(scores[i]);
+        }
+    }
+
+    // List<Grade> view; elements are built on access, so changing a returned
+    // Grade does not write through - use set/add/remove on the list instead
+    public List<Grade> asList() {
+        return new AbstractList<Grade>() {
+            @Override
+            public Grade get(int i) {
+                if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+                return new Grade(subjectAt(i), scores[i]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Grade set(int i, Grade g) {
+                Grade previous = get(i);
+                GradeBook.this.set(i, g.getSubject(), g.getScore());
+                return previous;
+            }
+
+            @Override
+            public void add(int i, Grade g) {
+                if (i != size) throw new UnsupportedOperationException("Grades can only be appended");
+                GradeBook.this.add(g.getSubject(), g.getScore());
+                modCount++;
+            }
+
+            @Override
+            public Grade remove(int i) {
+                Grade previous = get(i);
+                GradeBook.this.remove(i);
+                modCount++;
+                return previous;
+            }
+        };
+    }
+}
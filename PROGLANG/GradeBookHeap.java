@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Retained heap of a grade column held as GradeBooks against the
+// List<Grade> the split-based parser kept.
+//
+// Headless: java GradeBookHeap [students]
+public class GradeBookHeap {
+    public static void main(String[] args) {
+        if (args.length > 1) {
+            System.err.println("Usage: java GradeBookHeap [students]");
+            System.exit(2);
+        }
+        heap(args.length == 1 ? Integer.parseInt(args[0]) : 100_000);
+    }
+
+    // GC-settled heap retained by the grade column of generated students with 8
+    // grades each, as the split-based parser held it and as GradeBooks
+    private static void heap(int students) {
+        String[] subjects = {"Math", "Science", "English", "History", "Geography", "Art", "Music", "PE",
+                "Physics", "Chemistry", "Biology", "Literature"};
+        List<String> csvs = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < 8; k++) {
+                if (k > 0) sb.append(',');
+                sb.append(subjects[(i + k * 5) % subjects.length]).append(':').append((i * 31 + k * 7) % 101);
+            }
+            csvs.add(sb.toString());
+        }
+
+        long before = settledHeap();
+        List<List<Grade>> lists = new ArrayList<>(students);
+        for (String csv : csvs) {
+            List<Grade> list = new ArrayList<>();
+            for (String item : csv.split(",")) {
+                String[] kv = item.split(":", 2);
+                list.add(new Grade(kv[0].trim(), Integer.parseInt(kv[1].trim())));
+            }
+            lists.add(list);
+        }
+        long asLists = settledHeap() - before;
+        lists = null;
+
+        before = settledHeap();
+        List<GradeBook> books = new ArrayList<>(students);
+        for (String csv : csvs) books.add(StudentRecordParser.parseGradeBook(csv, 0, csv.length()));
+        long asBooks = settledHeap() - before;
+
+        System.out.printf("%,d students x 8 grades%n", students);
+        System.out.printf("  List<Grade>: %,d B/student%n", asLists / students);
+        System.out.printf("  GradeBook:   %,d B/student%n", asBooks / students);
+        if (lists != null || books.size() + csvs.size() == 0) System.out.println();
+    }
+
+    private static long settledHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Long-lived appender for one log file. Appends from concurrent callers are
+// queued and a single writer thread drains the queue, writing each batch with
+// one write() and at most one fsync (group commit). Callers block until their
+// batch has reached the durability level they asked for. Lines are written as
+// text, or as BinaryTransactionLog records when the path ends in ".bin".
+// Transaction logs roll into segments (TransactionLogSegments) between batches.
+// Only the transaction logs get one (FileHandler.appendLines): each appender
+// holds a thread and an open channel until the process exits.
+public class LogAppender {
+    public enum Durability {
+        FSYNC_EACH_COMMIT, // fsync before releasing the batch
+        FSYNC_INTERVAL,    // released by the next periodic fsync
+        OS_BUFFERED        // released once the OS has the bytes
+    }
+
+    private static final Map<String, LogAppender> OPEN = new HashMap<>();
+    private static boolean hookInstalled;
+    private static final String NEWLINE = System.lineSeparator();
+    // Wakes the writer on close(); interrupting it instead would close the channel mid-write
+    private static final Pending CLOSE_MARKER = new Pending(List.of(), Durability.OS_BUFFERED);
+
+    private final String path;
+    private final Durability defaultDurability;
+    private final long fsyncIntervalMs;
+    private final DataFileLock fileLock;
+    private final LineEncoder encoder;
+    private final TransactionLogSegments segments;
+    // the live file the channel has open, and since when it has been live
+    private FileChannel channel;
+    private Object fileKey;
+    private long openedMillis;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // guards closed together with the enqueue, so nothing is queued after the writer stops
+    private final Object enqueueLock = new Object();
+    private volatile boolean closed;
+
+    // Turns a batch of lines into the bytes appended for it; called under the
+    // file's exclusive lock with the appender's channel
+    interface LineEncoder {
+        ByteBuffer encode(List<String> lines, FileChannel channel) throws IOException;
+
+        // The channel now points at another file (the log rolled)
+        default void fileChanged() {}
+    }
+
+    private static final LineEncoder TEXT = (lines, channel) -> {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append(NEWLINE);
+        return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    };
+
+    private static class Pending {
+        final List<String> lines;
+        final Durability durability;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(List<String> lines, Durability durability) {
+            this.lines = lines;
+            this.durability = durability;
+        }
+    }
+
+    // One appender per file for the whole process
+    public static synchronized LogAppender forPath(String path) {
+        String key = new File(path).getAbsolutePath();
+        LogAppender appender = OPEN.get(key);
+        if (appender == null) {
+            if (!hookInstalled) {
+                // once only: appenders opened after closeAll() (e.g. by another shutdown hook) are not re-registered
+                Runtime.getRuntime().addShutdownHook(new Thread(LogAppender::closeAll, "log-appender-shutdown"));
+                hookInstalled = true;
+            }
+            appender = new LogAppender(path, defaultDurability(), defaultFsyncIntervalMs());
+            OPEN.put(key, appender);
+        }
+        return appender;
+    }
+
+    public static synchronized void closeAll() {
+        for (LogAppender a : OPEN.values()) a.close();
+        OPEN.clear();
+    }
+
+    // -Dsis.durability=fsync|interval|buffered, -Dsis.fsyncIntervalMs=N
+    public static Durability defaultDurability() {
+        String mode = System.getProperty("sis.durability", "buffered");
+        if (mode.equalsIgnoreCase("fsync")) return Durability.FSYNC_EACH_COMMIT;
+        if (mode.equalsIgnoreCase("interval")) return Durability.FSYNC_INTERVAL;
+        return Durability.OS_BUFFERED;
+    }
+
+    public static long defaultFsyncIntervalMs() {
+        return Long.getLong("sis.fsyncIntervalMs", 50L);
+    }
+
+    public LogAppender(String path, Durability defaultDurability, long fsyncIntervalMs) {
+        FileHandler.ensureFileExists(path);
+        this.path = path;
+        this.defaultDurability = defaultDurability;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.fileLock = DataFileLock.forPath(path);
+        this.encoder = BinaryTransactionLog.isBinary(path) ? new BinaryTransactionLog.Encoder(path) : TEXT;
+        this.segments = TransactionLogSegments.rolls(path) ? TransactionLogSegments.forPath(path) : null;
+        try {
+            openChannel();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open file for append: " + path, e);
+        }
+        // compresses and prunes what an earlier run left behind
+        if (segments != null) segments.maintain();
+        this.writer = new Thread(this::writeLoop, "log-appender-" + new File(path).getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void append(String line) {
+        append(List.of(line), defaultDurability);
+    }
+
+    public void append(List<String> lines, Durability durability) {
+        await(appendAsync(lines, durability));
+    }
+
+    public CompletableFuture<Void> appendAsync(List<String> lines, Durability durability) {
+        Pending p = new Pending(lines, durability);
+        synchronized (enqueueLock) {
+            if (closed) {
+                p.done.completeExceptionally(new IOException("Appender closed: " + path));
+                return p.done;
+            }
+            queue.add(p);
+        }
+        return p.done;
+    }
+
+    // Stops accepting appends, drains what is queued and fsyncs before closing
+    public void close() {
+        synchronized (enqueueLock) {
+            if (closed) return;
+            closed = true;
+            queue.add(CLOSE_MARKER);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void await(CompletableFuture<Void> f) {
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while appending: " + path, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Cannot append file: " + path, e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            drainLoop();
+        } finally {
+            // the writer is gone (closed, or died on an Error): nothing queued may be left waiting
+            synchronized (enqueueLock) {
+                closed = true;
+            }
+            List<Pending> left = new ArrayList<>();
+            queue.drainTo(left);
+            for (Pending p : left) p.done.completeExceptionally(new IOException("Appender closed: " + path));
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void drainLoop() {
+        List<Pending> awaitingSync = new ArrayList<>();
+        long lastSync = System.nanoTime();
+
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            try {
+                Pending first;
+                if (awaitingSync.isEmpty()) {
+                    first = queue.take();
+                } else {
+                    long waitNs = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs) - (System.nanoTime() - lastSync);
+                    first = queue.poll(Math.max(0, waitNs), TimeUnit.NANOSECONDS);
+                }
+                if (first != null) batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch);
+            batch.remove(CLOSE_MARKER);
+
+            boolean forceNow = false;
+            try {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    for (Pending p : batch) {
+                        if (p.durability == Durability.FSYNC_EACH_COMMIT) forceNow = true;
+                    }
+                }
+
+                boolean intervalDue = !awaitingSync.isEmpty()
+                        && System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+                for (Pending p : batch) {
+                    if (p.durability == Durability.FSYNC_INTERVAL) awaitingSync.add(p);
+                }
+                if (closed && !awaitingSync.isEmpty()) intervalDue = true;
+
+                if (forceNow || intervalDue) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    for (Pending p : awaitingSync) p.done.complete(null);
+                    awaitingSync.clear();
+                }
+                for (Pending p : batch) {
+                    if (p.durability != Durability.FSYNC_INTERVAL) p.done.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Pending p : batch) p.done.completeExceptionally(e);
+                for (Pending p : awaitingSync) p.done.completeExceptionally(e);
+                awaitingSync.clear();
+            }
+
+            if (closed && queue.isEmpty() && awaitingSync.isEmpty()) break;
+        }
+    }
+
+    private void write(List<Pending> batch) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Pending p : batch) lines.addAll(p.lines);
+        // other instances append to the same file; the whole batch goes in as one locked write
+        try {
+            fileLock.exclusive(() -> {
+                try {
+                    if (segments != null) rollIfDue();
+                    ByteBuffer buf = encoder.encode(lines, channel);
+                    while (buf.hasRemaining()) channel.write(buf);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        FileHandler.ensureFileExists(path);
+        Path p = Path.of(path);
+        channel = FileChannel.open(p, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        fileKey = attrs.fileKey();
+        openedMillis = Math.min(System.currentTimeMillis(), attrs.creationTime().toMillis());
+    }
+
+    // Runs under the exclusive lock. Another process may have rolled the log
+    // since the last batch, in which case this follows it to the new live file.
+    private void rollIfDue() throws IOException {
+        Path p = Path.of(path);
+        boolean moved;
+        if (!Files.exists(p)) {
+            moved = true;
+        } else if (fileKey != null) {
+            moved = !fileKey.equals(Files.readAttributes(p, BasicFileAttributes.class).fileKey());
+        } else {
+            moved = Files.size(p) != channel.size();
+        }
+        if (moved) reopen();
+
+        long size = channel.size();
+        long maxBytes = TransactionLogSegments.segmentMaxBytes();
+        long maxMillis = TransactionLogSegments.segmentMaxMillis();
+        boolean due = size > 0 && ((maxBytes > 0 && size >= maxBytes)
+                || (maxMillis > 0 && System.currentTimeMillis() - openedMillis >= maxMillis));
+        if (!due) return;
+        // closed first: some platforms will not rename an open file
+        channel.close();
+        segments.roll();
+        reopen();
+        segments.maintain();
+    }
+
+    private void reopen() throws IOException {
+        if (channel.isOpen()) channel.close();
+        openChannel();
+        encoder.fileChanged();
+    }
+}
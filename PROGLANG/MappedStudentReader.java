@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+// Read path over a memory-mapped students_master.txt. Lines and '|' field
+// boundaries are found directly on the mapped bytes; strings are only decoded
+// for the fields (or whole records) a caller asks for.
+public class MappedStudentReader {
+    public static final int MAX_FIELDS = 8;
+
+    public interface RecordVisitor {
+        // Return false to stop the scan
+        boolean visit(Record record);
+    }
+
+    // Flyweight over the current line; only valid inside visit()
+    public static class Record {
+        private MappedByteBuffer buf;
+        private int lineStart;
+        private int lineEnd;
+        private int fieldCount;
+        private final int[] fieldStart = new int[MAX_FIELDS];
+        private final int[] fieldEnd = new int[MAX_FIELDS];
+
+        public int fieldCount() { return fieldCount; }
+
+        public String field(int i) {
+            return decode(fieldStart[i], fieldEnd[i]);
+        }
+
+        public String line() {
+            return decode(lineStart, lineEnd);
+        }
+
+        // Matches String.equalsIgnoreCase for ASCII; anything else is decoded and compared
+        public boolean fieldEqualsIgnoreCase(int i, String value) {
+            int start = fieldStart[i];
+            int len = fieldEnd[i] - start;
+            if (len != value.length()) {
+                // a non-ASCII field can have more bytes than chars
+                return len > value.length() && hasNonAscii(start, fieldEnd[i]) && field(i).equalsIgnoreCase(value);
+            }
+            for (int k = 0; k < len; k++) {
+                int b = buf.get(start + k) & 0xFF;
+                char c = value.charAt(k);
+                if (b >= 0x80 || c >= 0x80) return field(i).equalsIgnoreCase(value);
+                if (b != c && lowerAscii(b) != lowerAscii(c)) return false;
+            }
+            return true;
+        }
+
+        private boolean hasNonAscii(int from, int to) {
+            for (int k = from; k < to; k++) {
+                if ((buf.get(k) & 0x80) != 0) return true;
+            }
+            return false;
+        }
+
+        private String decode(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            buf.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int lowerAscii(int c) {
+            return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+        }
+    }
+
+    // Mapped files cannot be replaced or truncated on Windows until the mapping is
+    // garbage collected, which would break the master-file rewrites.
+    public static boolean isSupported() {
+        return !System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+    }
+
+    // Visits every non-blank line, trimmed the same way String.trim() would
+    public static void scan(String path, RecordVisitor visitor) {
+        FileHandler.ensureFileExists(path);
+        File f = new File(path);
+        if (f.length() == 0) return;
+        if (f.length() > Integer.MAX_VALUE) throw new RuntimeException("File too large to map: " + path);
+
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            Record r = new Record();
+            r.buf = buf;
+
+            int limit = buf.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int eol = pos;
+                while (eol < limit && buf.get(eol) != '\n') eol++;
+
+                int start = pos;
+                int end = eol;
+                while (start < end && (buf.get(start) & 0xFF) <= ' ') start++;
+                while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') end--;
+                pos = eol + 1;
+                if (start == end) continue;
+
+                r.lineStart = start;
+                r.lineEnd = end;
+                r.fieldCount = 0;
+                int fs = start;
+                for (int k = start; k <= end && r.fieldCount < MAX_FIELDS; k++) {
+                    if (k == end || buf.get(k) == '|') {
+                        r.fieldStart[r.fieldCount] = fs;
+                        r.fieldEnd[r.fieldCount] = k;
+                        r.fieldCount++;
+                        fs = k + 1;
+                    }
+                }
+                if (!visitor.visit(r)) return;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot map file: " + path, e);
+        }
+    }
+
+    // First well-formed record whose studentId matches; only that line is decoded
+    public static Optional<Student> findByStudentId(String path, String studentId) {
+        Student[] found = new Student[1];
+        scan(path, r -> {
+            if (r.fieldCount() < 4 || !r.fieldEqualsIgnoreCase(0, studentId)) return true;
+            found[0] = StudentRecordParser.parseStudentLine(r.line());
+            return false;
+        });
+        return Optional.ofNullable(found[0]);
+    }
+}
@@ -0,0 +1,77 @@
+// One change in a StudentService.applyBatch call. Built through the factories;
+// fields a type does not use are null.
+public class Mutation {
+    public enum Type { ADD_STUDENT, ASSIGN_GRADE, MARK_ATTENDANCE }
+
+    private final Type type;
+    private final String studentId;
+    private final String name;
+    private final String username;
+    private final String rawPassword;
+    private final String subject;
+    private final int score;
+    private final String date;
+    private final String status;
+
+    private Mutation(Type type, String studentId, String name, String username, String rawPassword,
+                     String subject, int score, String date, String status) {
+        this.type = type;
+        this.studentId = studentId;
+        this.name = name;
+        this.username = username;
+        this.rawPassword = rawPassword;
+        this.subject = subject;
+        this.score = score;
+        this.date = date;
+        this.status = status;
+    }
+
+    public static Mutation addStudent(String studentId, String name, String username, String rawPassword) {
+        return new Mutation(Type.ADD_STUDENT, studentId, name, username, rawPassword, null, 0, null, null);
+    }
+
+    public static Mutation assignGrade(String studentId, String subject, int score) {
+        return new Mutation(Type.ASSIGN_GRADE, studentId, null, null, null, subject, score, null, null);
+    }
+
+    public static Mutation markAttendance(String studentId, String dateYYYYMMDD, String status) {
+        return new Mutation(Type.MARK_ATTENDANCE, studentId, null, null, null, null, 0, dateYYYYMMDD, status);
+    }
+
+    public Type getType() { return type; }
+    public String getStudentId() { return studentId; }
+    public String getName() { return name; }
+    public String getUsername() { return username; }
+    public String getRawPassword() { return rawPassword; }
+    public String getSubject() { return subject; }
+    public int getScore() { return score; }
+    public String getDate() { return date; }
+    public String getStatus() { return status; }
+
+    // Applies a grade or attendance change to s; adds have nothing to apply
+    void applyTo(Student s) {
+        if (type == Type.ASSIGN_GRADE) {
+            GradeBook grades = s.getGradeBook();
+            int i = grades.indexOfSubjectIgnoreCase(subject.trim());
+            if (i >= 0) grades.set(i, subject.trim(), score);
+            else grades.add(subject.trim(), score);
+        } else if (type == Type.MARK_ATTENDANCE) {
+            s.getAttendanceBook().put(date.trim(), cap(status.trim()));
+        }
+    }
+
+    private static String cap(String s) {
+        if (s == null || s.isEmpty()) return s;
+        String lower = s.toLowerCase();
+        return Character.toUpperCase(lower.charAt(0)) + lower.substring(1);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADD_STUDENT: return "add " + studentId + " (" + username + ")";
+            case ASSIGN_GRADE: return "grade " + studentId + " " + subject + ":" + score;
+            default: return "attendance " + studentId + " " + date + ":" + status;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+// Outcome of one Mutation in a batch; message says why it was rejected
+public class MutationResult {
+    private final Mutation mutation;
+    private final boolean success;
+    private final String message;
+
+    private MutationResult(Mutation mutation, boolean success, String message) {
+        this.mutation = mutation;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static MutationResult ok(Mutation mutation) {
+        return new MutationResult(mutation, true, "OK");
+    }
+
+    public static MutationResult failed(Mutation mutation, String message) {
+        return new MutationResult(mutation, false, message);
+    }
+
+    public Mutation getMutation() { return mutation; }
+    public boolean isSuccess() { return success; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return mutation + ": " + message;
+    }
+}
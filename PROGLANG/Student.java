@@ -1,29 +1,95 @@
-import java.util.ArrayList;
 import java.util.List;
 
 public class Student extends User {
     private String studentId;
     private String name;
-    private List<Grade> grades;
-    private List<Attendance> attendanceRecords;
+    private GradeBook gradeBook;
+    private AttendanceBook attendanceBook;
+
+    // Encoded gradesCSV / attendanceCSV slices as read from the master file. They
+    // are decoded on first access and dropped once decoded or replaced; until then
+    // serialization copies them back verbatim.
+    private String rawGrades;
+    private String rawAttendance;
+
+    // Version of the persisted record this object was read from (0 = never
+    // persisted). Upserts are compare-and-swap on it; see StudentRepository.
+    private long version;
 
     public Student(String studentId, String name, String username, String encryptedPassword) {
         super(username, encryptedPassword, "Student");
         this.studentId = studentId;
         this.name = name;
-        this.grades = new ArrayList<>();
-        this.attendanceRecords = new ArrayList<>();
+        this.gradeBook = new GradeBook();
+        this.attendanceBook = new AttendanceBook();
     }
 
     public String getStudentId() { return studentId; }
     public String getName() { return name; }
-    public List<Grade> getGrades() { return grades; }
-    public List<Attendance> getAttendanceRecords() { return attendanceRecords; }
+    public long getVersion() { return version; }
+    // A live view over the compact GradeBook storage
+    public List<Grade> getGrades() {
+        GradeBook book = getGradeBook();
+        return book == null ? null : book.asList();
+    }
+
+    GradeBook getGradeBook() {
+        if (rawGrades != null) {
+            gradeBook = StudentRecordParser.parseGradeBook(rawGrades, 0, rawGrades.length());
+            rawGrades = null;
+        }
+        return gradeBook;
+    }
+
+    // A live view over the bitset-backed AttendanceBook, in date order
+    public List<Attendance> getAttendanceRecords() {
+        AttendanceBook book = getAttendanceBook();
+        return book == null ? null : book.asList();
+    }
+
+    AttendanceBook getAttendanceBook() {
+        if (rawAttendance != null) {
+            attendanceBook = StudentRecordParser.parseAttendanceBook(rawAttendance, 0, rawAttendance.length());
+            rawAttendance = null;
+        }
+        return attendanceBook;
+    }
+
+    String getRawGrades() { return rawGrades; }
+    String getRawAttendance() { return rawAttendance; }
 
     public void setStudentId(String studentId) { this.studentId = studentId; }
     public void setName(String name) { this.name = name; }
-    public void setGrades(List<Grade> grades) { this.grades = grades; }
-    public void setAttendanceRecords(List<Attendance> attendanceRecords) { this.attendanceRecords = attendanceRecords; }
+    public void setVersion(long version) { this.version = version; }
+    public void setGrades(List<Grade> grades) {
+        this.gradeBook = grades == null ? null : GradeBook.of(grades);
+        this.rawGrades = null;
+    }
+
+    void setGradeBook(GradeBook gradeBook) {
+        this.gradeBook = gradeBook;
+        this.rawGrades = null;
+    }
+
+    public void setAttendanceRecords(List<Attendance> attendanceRecords) {
+        this.attendanceBook = attendanceRecords == null ? null : AttendanceBook.of(attendanceRecords);
+        this.rawAttendance = null;
+    }
+
+    void setAttendanceBook(AttendanceBook attendanceBook) {
+        this.attendanceBook = attendanceBook;
+        this.rawAttendance = null;
+    }
+
+    void setRawGrades(String csv) {
+        this.gradeBook = null;
+        this.rawGrades = csv;
+    }
+
+    void setRawAttendance(String csv) {
+        this.attendanceBook = null;
+        this.rawAttendance = csv;
+    }
 
     @Override
     public boolean login(String username, String password) {
@@ -47,6 +113,7 @@ public class Student extends User {
 
     public String viewGradesAsText() {
         // Return a list format with leading '- ' on each line so dashboard parsing works
+        List<Grade> grades = getGrades();
         if (grades == null || grades.isEmpty()) return "None";
         StringBuilder sb = new StringBuilder();
         for (Grade g : grades) sb.append("- ").append(g.getSubject()).append(": ").append(g.getScore()).append("\n");
@@ -55,6 +122,7 @@ public class Student extends User {
 
     public String viewAttendanceAsText() {
         // Return a list format with leading '- ' on each line so dashboard parsing works
+        List<Attendance> attendanceRecords = getAttendanceRecords();
         if (attendanceRecords == null || attendanceRecords.isEmpty()) return "None";
         StringBuilder sb = new StringBuilder();
         for (Attendance a : attendanceRecords) sb.append("- ").append(a.getDate()).append(": ").append(a.getStatus()).append("\n");
@@ -0,0 +1,16 @@
+// Projection of a student record holding only what login and uniqueness checks need
+public class StudentCredentials {
+    private final String studentId;
+    private final String username;
+    private final String encryptedPassword;
+
+    public StudentCredentials(String studentId, String username, String encryptedPassword) {
+        this.studentId = studentId;
+        this.username = username;
+        this.encryptedPassword = encryptedPassword;
+    }
+
+    public String getStudentId() { return studentId; }
+    public String getUsername() { return username; }
+    public String getEncryptedPassword() { return encryptedPassword; }
+}
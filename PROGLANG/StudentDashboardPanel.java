@@ -619,13 +619,12 @@ public class StudentDashboardPanel extends JPanel {
         }
 
         // Update attendance stats
-        String attendanceText = student.viewAttendanceAsText();
-        int attCount = countAttendance(attendanceText);
+        AttendanceBook attendance = student.getAttendanceBook();
+        int attCount = attendance.size();
         attendanceCountLabel.setText(attCount + (attCount == 1 ? " Record" : " Records"));
 
         if (attCount > 0) {
-            int presentCount = countPresent(attendanceText);
-            double rate = (presentCount * 100.0) / attCount;
+            double rate = attendance.attendanceRate();
             attendanceRateLabel.setText("Rate: " + formatDecimal(rate) + "%");
             
             // Color code rate
@@ -773,28 +772,6 @@ public class StudentDashboardPanel extends JPanel {
         return count > 0 ? (double) total / count : 0.0;
     }
 
-    private int countAttendance(String attendanceText) {
-        if (attendanceText == null || attendanceText.contains("None")) return 0;
-        int count = 0;
-        String[] lines = attendanceText.split("\n");
-        for (String line : lines) {
-            if (line.trim().startsWith("-")) count++;
-        }
-        return count;
-    }
-
-    private int countPresent(String attendanceText) {
-        if (attendanceText == null || attendanceText.contains("None")) return 0;
-        int count = 0;
-        String[] lines = attendanceText.split("\n");
-        for (String line : lines) {
-            if (line.trim().startsWith("-") && line.toLowerCase().contains("present")) {
-                count++;
-            }
-        }
-        return count;
-    }
-
     private String formatDecimal(double value) {
         return String.format("%.1f", value);
     }
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Single-pass, index-based parser for master-file records:
+//   studentId|name|username|encPass|gradesCSV|attendanceCSV|version
+// (version is optional; records written before it existed read as version 0)
+// It gives the same results as splitting on '|', ',' and ':' and trimming each
+// token, without the intermediate arrays and strings. parseStudentLine leaves
+// the grade and attendance columns encoded on the Student (see Student#getGrades).
+public class StudentRecordParser {
+
+    private StudentRecordParser() {}
+
+    // Returns null for lines with fewer than four fields
+    public static Student parseStudentLine(String line) {
+        int len = line.length();
+        int p1 = line.indexOf('|');
+        if (p1 < 0) return null;
+        int p2 = line.indexOf('|', p1 + 1);
+        if (p2 < 0) return null;
+        int p3 = line.indexOf('|', p2 + 1);
+        if (p3 < 0) return null;
+        int p4 = line.indexOf('|', p3 + 1);
+
+        Student s = new Student(
+                line.substring(0, p1),
+                line.substring(p1 + 1, p2),
+                line.substring(p2 + 1, p3),
+                line.substring(p3 + 1, p4 < 0 ? len : p4));
+
+        // grades and attendance stay encoded until the student is asked for them
+        if (p4 < 0) return s;
+        int p5 = line.indexOf('|', p4 + 1);
+        if (p5 > p4 + 1 || (p5 < 0 && len > p4 + 1)) s.setRawGrades(line.substring(p4 + 1, p5 < 0 ? len : p5));
+        if (p5 < 0) return s;
+        int p6 = line.indexOf('|', p5 + 1);
+        if (p6 < 0 ? len > p5 + 1 : p6 > p5 + 1) s.setRawAttendance(line.substring(p5 + 1, p6 < 0 ? len : p6));
+        if (p6 < 0) return s;
+        int p7 = line.indexOf('|', p6 + 1);
+        s.setVersion(parseVersion(line, p6 + 1, p7 < 0 ? len : p7));
+        return s;
+    }
+
+    public static List<Grade> parseGrades(String csv) {
+        if (csv == null) return new ArrayList<>();
+        return parseGrades(csv, 0, csv.length());
+    }
+
+    public static List<Grade> parseGrades(String s, int from, int to) {
+        return new ArrayList<>(parseGradeBook(s, from, to).asList());
+    }
+
+    // subject:score items separated by ','; blank items, items without ':' and
+    // scores that are not integers are skipped
+    public static GradeBook parseGradeBook(String s, int from, int to) {
+        GradeBook book = new GradeBook();
+        int itemStart = from;
+        while (itemStart <= to) {
+            int itemEnd = indexOf(s, ',', itemStart, to);
+            int a = skipBlank(s, itemStart, itemEnd);
+            int b = skipBlankBack(s, a, itemEnd);
+            int colon = indexOf(s, ':', a, b);
+            if (colon < b) {
+                int subjectEnd = skipBlankBack(s, a, colon);
+                int scoreStart = skipBlank(s, colon + 1, b);
+                if (scoreStart < b) {
+                    try {
+                        int score = Integer.parseInt(s, scoreStart, b, 10);
+                        book.add(s.substring(a, subjectEnd), score);
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+            itemStart = itemEnd + 1;
+        }
+        return book;
+    }
+
+    public static List<Attendance> parseAttendance(String csv) {
+        if (csv == null) return new ArrayList<>();
+        return parseAttendance(csv, 0, csv.length());
+    }
+
+    public static List<Attendance> parseAttendance(String s, int from, int to) {
+        return new ArrayList<>(parseAttendanceBook(s, from, to).asList());
+    }
+
+    // date:status items separated by ','; blank items and items without ':' are
+    // skipped. yyyy-MM-dd days marked Present/Absent go straight into the bitsets.
+    public static AttendanceBook parseAttendanceBook(String s, int from, int to) {
+        AttendanceBook book = new AttendanceBook();
+        int itemStart = from;
+        while (itemStart <= to) {
+            int itemEnd = indexOf(s, ',', itemStart, to);
+            int a = skipBlank(s, itemStart, itemEnd);
+            int b = skipBlankBack(s, a, itemEnd);
+            int colon = indexOf(s, ':', a, b);
+            if (colon < b) {
+                int dateEnd = skipBlankBack(s, a, colon);
+                int statusStart = skipBlank(s, colon + 1, b);
+                long day = AttendanceBook.epochDay(s, a, dateEnd);
+                if (day != Long.MIN_VALUE && regionIs(s, statusStart, b, AttendanceBook.PRESENT)) {
+                    book.putDay(day, true);
+                } else if (day != Long.MIN_VALUE && regionIs(s, statusStart, b, AttendanceBook.ABSENT)) {
+                    book.putDay(day, false);
+                } else {
+                    book.put(s.substring(a, dateEnd), s.substring(statusStart, b));
+                }
+            }
+            itemStart = itemEnd + 1;
+        }
+        return book;
+    }
+
+    private static boolean regionIs(String s, int from, int to, String expected) {
+        return to - from == expected.length() && s.startsWith(expected, from);
+    }
+
+    private static long parseVersion(String s, int from, int to) {
+        int a = skipBlank(s, from, to);
+        try {
+            return Long.parseLong(s, a, skipBlankBack(s, a, to), 10);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Position of c in [from, to), or to when absent
+    private static int indexOf(String s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) return i;
+        }
+        return to;
+    }
+
+    // Same notion of blank as String.trim()
+    private static int skipBlank(String s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static int skipBlankBack(String s, int from, int to) {
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        return to;
+    }
+}
@@ -0,0 +1,131 @@
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// Checks StudentRecordParser against the String.split-based parsing it
+// replaced, and times both.
+//
+// Headless: java StudentRecordParserBench check [lines]     (compare with String.split parsing)
+//           java StudentRecordParserBench bench [records]   (time and allocation per record)
+public class StudentRecordParserBench {
+    public static void main(String[] args) {
+        int n = args.length == 2 ? Integer.parseInt(args[1]) : 0;
+        if (args.length >= 1 && args[0].equals("check")) {
+            check(n > 0 ? n : 2_000_000);
+        } else if (args.length >= 1 && args[0].equals("bench")) {
+            bench(n > 0 ? n : 200_000);
+        } else {
+            System.err.println("Usage: java StudentRecordParserBench check [lines]");
+            System.err.println("       java StudentRecordParserBench bench [records]");
+            System.exit(2);
+        }
+    }
+
+    // Random lines over the delimiter alphabet, parsed both ways
+    private static void check(int lines) {
+        Random rnd = new Random(42);
+        String alphabet = "|,: ab1-9x\t";
+        int mismatches = 0;
+        for (int i = 0; i < lines; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = rnd.nextInt(40);
+            for (int k = 0; k < len; k++) sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+            String line = sb.toString();
+            if (!sameAsSplit(line)) {
+                if (mismatches++ < 10) System.out.println("mismatch: \"" + line + "\"");
+            }
+        }
+        System.out.println(lines + " lines, " + mismatches + " mismatches");
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static boolean sameAsSplit(String line) {
+        String[] parts = line.split("\\|", -1);
+        Student s = StudentRecordParser.parseStudentLine(line);
+        if (parts.length < 4) return s == null;
+        if (s == null || !s.getStudentId().equals(parts[0]) || !s.getName().equals(parts[1])
+                || !s.getUsername().equals(parts[2]) || !s.getEncryptedPassword().equals(parts[3])) return false;
+        List<Grade> expected = splitGrades(parts.length >= 5 ? parts[4] : "");
+        List<Grade> actual = s.getGrades();
+        if (expected.size() != actual.size()) return false;
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).getSubject().equals(actual.get(i).getSubject())
+                    || expected.get(i).getScore() != actual.get(i).getScore()) return false;
+        }
+        // the attendance book keeps one status per date, the last one read
+        return byDate(splitAttendance(parts.length >= 6 ? parts[5] : "")).equals(byDate(s.getAttendanceRecords()));
+    }
+
+    private static Map<String, String> byDate(List<Attendance> records) {
+        Map<String, String> m = new TreeMap<>();
+        for (Attendance a : records) m.put(a.getDate(), a.getStatus());
+        return m;
+    }
+
+    // The String.split-based parsing this class replaced, kept as the reference
+    private static List<Grade> splitGrades(String csv) {
+        List<Grade> list = new ArrayList<>();
+        if (csv.trim().isEmpty()) return list;
+        for (String it : csv.split(",", -1)) {
+            it = it.trim();
+            if (it.isEmpty()) continue;
+            String[] kv = it.split(":", 2);
+            if (kv.length != 2) continue;
+            try {
+                list.add(new Grade(kv[0].trim(), Integer.parseInt(kv[1].trim())));
+            } catch (NumberFormatException ignored) {}
+        }
+        return list;
+    }
+
+    private static List<Attendance> splitAttendance(String csv) {
+        List<Attendance> list = new ArrayList<>();
+        if (csv.trim().isEmpty()) return list;
+        for (String it : csv.split(",", -1)) {
+            it = it.trim();
+            if (it.isEmpty()) continue;
+            String[] kv = it.split(":", 2);
+            if (kv.length != 2) continue;
+            list.add(new Attendance(kv[0].trim(), kv[1].trim()));
+        }
+        return list;
+    }
+
+    // One record with 8 grades and 180 attendance days, fully decoded each time
+    private static void bench(int records) {
+        StringBuilder sb = new StringBuilder("S00042|Jane Doe|jdoe|c2VjcmV0|");
+        for (int i = 0; i < 8; i++) sb.append(i == 0 ? "" : ",").append("Subject").append(i).append(':').append(60 + i * 5);
+        sb.append('|');
+        LocalDate day = LocalDate.of(2026, 1, 5);
+        for (int i = 0; i < 180; i++) sb.append(i == 0 ? "" : ",").append(day.plusDays(i)).append(':').append(i % 7 == 0 ? "Absent" : "Present");
+        String line = sb.toString();
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            long a0 = mx.getThreadAllocatedBytes(tid);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                String[] parts = line.split("\\|", -1);
+                sink += splitGrades(parts[4]).size() + splitAttendance(parts[5]).size();
+            }
+            long t1 = System.nanoTime();
+            long a1 = mx.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < records; i++) {
+                Student s = StudentRecordParser.parseStudentLine(line);
+                sink += s.getGradeBook().size() + s.getAttendanceBook().size();
+            }
+            long t2 = System.nanoTime();
+            long a2 = mx.getThreadAllocatedBytes(tid);
+            System.out.printf("round %d: split-based %.1f us/record %,d B/record, index-based %.1f us/record %,d B/record%n",
+                    round, (t1 - t0) / 1000.0 / records, (a1 - a0) / records,
+                    (t2 - t1) / 1000.0 / records, (a2 - a1) / records);
+        }
+        if (sink == 42) System.out.println();
+    }
+}
@@ -1,139 +1,741 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class StudentRepository {
+    // REWRITE rewrites the master file on every upsert. SEGMENTS appends the
+    // upserted record to a segment log instead and lets a background compactor
+    // fold the segments back into the master file.
+    public enum WriteMode { REWRITE, SEGMENTS }
 
-    public List<Student> loadAllStudents() {
-        List<String> lines = FileHandler.readAllLines(DataPaths.STUDENTS_MASTER);
-        List<Student> students = new ArrayList<>();
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty()) continue;
-            Student s = parseStudentLine(line);
-            if (s != null) students.add(s);
+    private static final long COMPACT_INTERVAL_SECONDS = 30;
+    private static final long COMPACT_TRIGGER_BYTES = 16L * 1024 * 1024;
+    private static final long[] NO_LOG_OFFSETS = {0, 0};
+    private static final String RUN_MARKER_PREFIX = "students.";
+    private static final String RUN_MARKER_SUFFIX = ".running";
+
+    private final WriteMode writeMode;
+    private final StudentSegmentLog segmentLog;
+    // Guards the master file together with its segments, across processes sharing
+    // the data directory: loads hold it shared, upserts and compaction exclusive.
+    private final DataFileLock masterLock = DataFileLock.forPath(DataPaths.STUDENTS_MASTER);
+    private final ScheduledExecutorService compactor;
+    // Writes StudentSnapshot checkpoints; null when -Dsis.snapshotSeconds=0
+    private final ScheduledExecutorService checkpointer;
+
+    // Resident copy of the master file. Point lookups read it without taking the
+    // repository lock; everything that changes it holds the lock, and a reload
+    // builds a new one and swaps it in.
+    private static final class Resident {
+        // file order, first occurrence of each studentId at positions.get(key); writer-only
+        final List<Student> students = new ArrayList<>();
+        final Map<String, Integer> positions = new HashMap<>();
+        // lower-cased studentId / username -> stored student (first occurrence)
+        final Map<String, Student> byId = new ConcurrentHashMap<>();
+        volatile Map<String, Student> byUsername = new ConcurrentHashMap<>();
+    }
+
+    // Master file (and segment set) fingerprint as of the last load/save. Every
+    // master write renames a new file into place, so the file key (inode) tells
+    // apart two rewrites of the same length within one mtime tick.
+    private static final class Fingerprint {
+        final Object fileKey;
+        final long length;
+        final long modifiedNanos;
+        final long segments;
+
+        Fingerprint(Object fileKey, long length, long modifiedNanos, long segments) {
+            this.fileKey = fileKey;
+            this.length = length;
+            this.modifiedNanos = modifiedNanos;
+            this.segments = segments;
+        }
+
+        boolean sameAs(Fingerprint other) {
+            return other != null && Objects.equals(fileKey, other.fileKey) && length == other.length
+                    && modifiedNanos == other.modifiedNanos && segments == other.segments;
+        }
+    }
+
+    private volatile Resident resident;
+    private volatile Fingerprint loaded;
+
+    // Checkpoint bookkeeping, guarded by this. A service appends to a transaction
+    // log before it upserts, so lines just below the current log end may not be
+    // in the store yet; a snapshot therefore records the log ends seen at the
+    // previous checkpoint, which every upsert has long caught up with.
+    private Fingerprint checkpointed;
+    // Held from capture to rename, so the shutdown checkpoint waits for a periodic one in progress
+    private final Object checkpointLock = new Object();
+    private long[] logsCoveredTo = NO_LOG_OFFSETS;
+    // Present while this instance runs with snapshots on and removed on a clean
+    // shutdown, so one left by a process that is gone marks a crash
+    private final String runMarker = runMarkerFor(DataFileLock.host(), ProcessHandle.current().pid());
+    private long[] logsSeenAt;
+
+    public StudentRepository() {
+        this(defaultWriteMode());
+    }
+
+    public StudentRepository(WriteMode writeMode) {
+        this.writeMode = writeMode;
+        if (writeMode == WriteMode.SEGMENTS) {
+            this.segmentLog = new StudentSegmentLog(DataPaths.STUDENT_SEGMENTS_DIR);
+            this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "student-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly,
+                    COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } else {
+            this.segmentLog = null;
+            this.compactor = null;
+        }
+
+        long snapshotSeconds = snapshotIntervalSeconds();
+        if (snapshotSeconds > 0) {
+            this.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "student-checkpointer");
+                t.setDaemon(true);
+                return t;
+            });
+            checkpointer.scheduleWithFixedDelay(this::checkpointQuietly, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+            // the next start then loads the snapshot instead of parsing the master
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownQuietly, "student-checkpoint-shutdown"));
+        } else {
+            this.checkpointer = null;
+        }
+    }
+
+    // -Dsis.snapshotSeconds=N between checkpoints (only written if the store
+    // changed); 0 turns snapshots off, both loading and writing them
+    public static long snapshotIntervalSeconds() {
+        return Long.getLong("sis.snapshotSeconds", 60L);
+    }
+
+    // -Dsis.writeMode=segments switches to the append-only segment log
+    public static WriteMode defaultWriteMode() {
+        String mode = System.getProperty("sis.writeMode", "rewrite");
+        return mode.equalsIgnoreCase("segments") ? WriteMode.SEGMENTS : WriteMode.REWRITE;
+    }
+
+    public synchronized List<Student> loadAllStudents() {
+        ensureLoaded();
+        List<Student> copies = new ArrayList<>(resident.students.size());
+        for (Student s : resident.students) copies.add(copyOf(s));
+        return copies;
+    }
+
+    // Yields students one at a time without building a full list. When the
+    // resident store is current it is walked directly; otherwise the master file
+    // (plus any segments) is read and parsed lazily, line by line, and the file
+    // is closed with the stream. Use try-with-resources.
+    public Stream<Student> streamStudents() {
+        synchronized (this) {
+            if (resident != null && isCurrent()) {
+                // stored students are replaced on upsert, never mutated, so a reference snapshot is enough
+                return new ArrayList<>(resident.students).stream().map(StudentRepository::copyOf);
+            }
         }
-        return students;
+        return streamFromDisk();
     }
 
-    public void saveAllStudents(List<Student> students) {
+    public synchronized void saveAllStudents(List<Student> students) {
         List<String> lines = new ArrayList<>();
         for (Student s : students) {
             lines.add(serializeStudent(s));
         }
-        FileHandler.writeAllLines(DataPaths.STUDENTS_MASTER, lines);
+        masterLock.exclusive(() -> {
+            if (segmentLog != null) {
+                // a full save supersedes every segment written so far
+                int sealed = segmentLog.roll();
+                FileHandler.replaceAllLines(DataPaths.STUDENTS_MASTER, lines);
+                segmentLog.deleteThrough(sealed);
+            } else {
+                FileHandler.writeAllLines(DataPaths.STUDENTS_MASTER, lines);
+            }
+        });
+
+        Resident fresh = new Resident();
+        for (Student s : students) put(fresh, copyOf(s));
+        resident = fresh;
+        rememberFingerprint();
     }
 
+    // Lookups below take no lock while the resident store is current
+
     public Optional<Student> findByUsername(String username) {
-        for (Student s : loadAllStudents()) {
-            if (s.getUsername().equalsIgnoreCase(username)) return Optional.of(s);
-        }
-        return Optional.empty();
+        if (username == null) return Optional.empty();
+        Student s = current().byUsername.get(key(username));
+        return s == null ? Optional.empty() : Optional.of(copyOf(s));
     }
 
     public Optional<Student> findByStudentId(String studentId) {
-        for (Student s : loadAllStudents()) {
-            if (s.getStudentId().equalsIgnoreCase(studentId)) return Optional.of(s);
+        if (studentId == null) return Optional.empty();
+        Student s = current().byId.get(key(studentId));
+        return s == null ? Optional.empty() : Optional.of(copyOf(s));
+    }
+
+    // Projected lookups: only studentId, username and the encrypted password are
+    // produced, so the grade and attendance columns are never decoded or copied.
+    public Optional<StudentCredentials> findCredentialsByUsername(String username) {
+        if (username == null) return Optional.empty();
+        if (canScanMasterDirectly()) return scanCredentials(2, username);
+        Student s = current().byUsername.get(key(username));
+        return s == null ? Optional.empty() : Optional.of(credentialsOf(s));
+    }
+
+    public Optional<StudentCredentials> findCredentialsByStudentId(String studentId) {
+        if (studentId == null) return Optional.empty();
+        if (canScanMasterDirectly()) return scanCredentials(0, studentId);
+        Student s = current().byId.get(key(studentId));
+        return s == null ? Optional.empty() : Optional.of(credentialsOf(s));
+    }
+
+    // Existence checks against the resident store, for callers that are about to
+    // write anyway and so gain nothing from the direct master scan
+    public boolean existsByStudentId(String studentId) {
+        return studentId != null && current().byId.containsKey(key(studentId));
+    }
+
+    public boolean existsByUsername(String username) {
+        return username != null && current().byUsername.containsKey(key(username));
+    }
+
+    // Compare-and-swap on the record version: the write only goes through if the
+    // student was read at the version currently stored (or is new). On success
+    // the stored version is bumped and copied back onto the caller's object, so
+    // it can be saved again; on a stale write nothing changes and false is returned.
+    // The check and the write happen under the exclusive master lock, after
+    // picking up anything another process wrote, so the swap holds across processes.
+    public synchronized boolean upsertStudent(Student student) {
+        return upsertAll(List.of(student))[0];
+    }
+
+    // Batch form of upsertStudent: each student is checked and versioned on its
+    // own (result[i] is false for a stale one), but everything that goes through
+    // is persisted with a single segment append or a single master rewrite.
+    public synchronized boolean[] upsertAll(List<Student> batch) {
+        return masterLock.exclusive(() -> upsertAllLocked(batch));
+    }
+
+    private boolean[] upsertAllLocked(List<Student> batch) {
+        ensureLoaded();
+        boolean[] results = new boolean[batch.size()];
+        Student[] storedAt = new Student[batch.size()];
+        List<Student> storedBatch = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Student student = batch.get(i);
+            Student current = resident.byId.get(key(student.getStudentId()));
+            long currentVersion = current == null ? 0 : current.getVersion();
+            if (current != null && student.getVersion() != currentVersion) continue;
+
+            Student stored = copyOf(student);
+            stored.setVersion(currentVersion + 1);
+            put(resident, stored);
+            storedBatch.add(stored);
+            storedAt[i] = stored;
+            results[i] = true;
+        }
+        if (storedBatch.isEmpty()) return results;
+
+        if (writeMode == WriteMode.SEGMENTS) {
+            List<String> records = new ArrayList<>(storedBatch.size());
+            for (Student s : storedBatch) records.add(serializeStudent(s));
+            segmentLog.appendAll(records);
+            rememberFingerprint();
+            if (segmentLog.totalBytes() >= COMPACT_TRIGGER_BYTES) compactor.execute(this::compactQuietly);
+        } else {
+            List<String> lines = new ArrayList<>(resident.students.size());
+            for (Student s : resident.students) lines.add(serializeStudent(s));
+            FileHandler.writeAllLines(DataPaths.STUDENTS_MASTER, lines);
+            rememberFingerprint();
         }
-        return Optional.empty();
+        for (int i = 0; i < batch.size(); i++) {
+            if (results[i]) batch.get(i).setVersion(storedAt[i].getVersion());
+        }
+        return results;
     }
 
-    public void upsertStudent(Student student) {
-        List<Student> all = loadAllStudents();
-        boolean updated = false;
-        for (int i = 0; i < all.size(); i++) {
-            if (all.get(i).getStudentId().equalsIgnoreCase(student.getStudentId())) {
-                all.set(i, student);
-                updated = true;
-                break;
+    // Folds all sealed segments into the master file. Writers only wait while the
+    // state is snapshotted and while the new master is renamed into place; it is
+    // written in between, outside the lock. A save or another instance's
+    // compaction may replace the master or fold the same segments meanwhile, so
+    // the rename only happens if the master and the sealed segments are still the
+    // ones read, and the compaction is dropped otherwise. Segment records are
+    // whole students, so replaying a segment that is already reflected in the
+    // master is harmless if we crash before deleting it.
+    public void compact() {
+        if (segmentLog == null) return;
+
+        List<String> lines = new ArrayList<>();
+        int[] sealed = new int[1];
+        Fingerprint[] master = new Fingerprint[1];
+        Map<Integer, Long> sealedSizes;
+        synchronized (this) {
+            if (segmentLog.totalBytes() == 0) return;
+            // another instance may have appended segments this one has not seen yet
+            sealedSizes = masterLock.exclusive(() -> {
+                ensureLoaded();
+                sealed[0] = segmentLog.roll();
+                master[0] = masterFingerprint();
+                for (Student s : resident.students) lines.add(serializeStudent(s));
+                rememberFingerprint();
+                return segmentLog.sizesThrough(sealed[0]);
+            });
+        }
+
+        // records appended meanwhile go to the new active segment, which is kept
+        Path tmp = FileHandler.writeTempLines(DataPaths.STUDENTS_MASTER, lines);
+        boolean committed = false;
+        try {
+            synchronized (this) {
+                committed = masterLock.exclusive(() -> {
+                    if (!masterFingerprint().sameAs(master[0])
+                            || !segmentLog.sizesThrough(sealed[0]).equals(sealedSizes)) {
+                        return false;
+                    }
+                    // another instance may have appended since; then the next access reloads
+                    boolean wasCurrent = isCurrent();
+                    FileHandler.moveIntoPlace(tmp, DataPaths.STUDENTS_MASTER);
+                    segmentLog.deleteThrough(sealed[0]);
+                    if (wasCurrent) rememberFingerprint();
+                    return true;
+                });
             }
+        } finally {
+            if (!committed) FileHandler.discardTemp(tmp);
+        }
+        if (!committed) System.err.println("Student segment compaction skipped: the master changed while it ran");
+    }
+
+    // Writes a snapshot of the current state unless nothing changed since the last one.
+    // The state is captured under the shared master lock; the file is written after.
+    public void checkpoint() {
+        synchronized (checkpointLock) {
+            checkpointLocked();
         }
-        if (!updated) all.add(student);
-        saveAllStudents(all);
     }
 
-    private Student parseStudentLine(String line) {
-        // studentId|name|username|encPass|gradesCSV|attendanceCSV
-        String[] parts = line.split("\\|", -1);
-        if (parts.length < 4) return null;
+    private void checkpointLocked() {
+        StudentSnapshot snapshot;
+        synchronized (this) {
+            snapshot = masterLock.shared(() -> {
+                ensureLoaded();
+                Fingerprint fp = loaded;
+                if (checkpointed != null && checkpointed.sameAs(fp)) return null;
 
-        String studentId = parts[0];
-        String name = parts[1];
-        String username = parts[2];
-        String encPass = parts[3];
+                File master = new File(DataPaths.STUDENTS_MASTER);
+                Map<Integer, Long> segments = new LinkedHashMap<>();
+                if (segmentLog != null) {
+                    for (File f : segmentLog.listSegments()) segments.put(StudentSegmentLog.numberOf(f), f.length());
+                }
+                long[] logEnds = {TransactionLogSegments.endOf(DataPaths.gradesLog()), TransactionLogSegments.endOf(DataPaths.attendanceLog())};
+                long[] from = logsSeenAt != null ? logsSeenAt : logsCoveredTo;
+                logsSeenAt = logEnds;
+                logsCoveredTo = from;
+                checkpointed = fp;
+                // stored students are replaced on upsert, never mutated, so the references can be written later
+                return new StudentSnapshot(master.length(), master.lastModified(), segments,
+                        from[0], from[1], System.currentTimeMillis(), new ArrayList<>(resident.students));
+            });
+        }
+        if (snapshot != null) snapshot.write(DataPaths.STUDENTS_SNAPSHOT);
+    }
 
-        Student s = new Student(studentId, name, username, encPass);
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            System.err.println("Student snapshot failed: " + e.getMessage());
+        }
+    }
 
-        String gradesCSV = parts.length >= 5 ? parts[4] : "";
-        String attendanceCSV = parts.length >= 6 ? parts[5] : "";
+    private void shutdownQuietly() {
+        checkpointQuietly();
+        deleteRunMarker(runMarker);
+    }
 
-        s.setGrades(parseGrades(gradesCSV));
-        s.setAttendanceRecords(parseAttendance(attendanceCSV));
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // keep the scheduled compactor alive; the next run retries
+            System.err.println("Student segment compaction failed: " + e.getMessage());
+        }
+    }
 
-        return s;
+    // Adds a student, or replaces the first record with the same studentId.
+    // Only called with the repository lock held (or on a Resident not yet published).
+    private static void put(Resident r, Student stored) {
+        String id = key(stored.getStudentId());
+        Integer pos = r.positions.get(id);
+        if (pos != null) {
+            Student previous = r.students.set(pos, stored);
+            r.byId.put(id, stored);
+            if (previous.getUsername().equalsIgnoreCase(stored.getUsername())) {
+                r.byUsername.replace(key(stored.getUsername()), previous, stored);
+            } else {
+                // usernames may be shared by several rows, so re-derive that index
+                Map<String, Student> byUsername = new ConcurrentHashMap<>();
+                for (Student s : r.students) byUsername.putIfAbsent(key(s.getUsername()), s);
+                r.byUsername = byUsername;
+            }
+        } else {
+            r.students.add(stored);
+            r.positions.put(id, r.students.size() - 1);
+            r.byId.put(id, stored);
+            r.byUsername.putIfAbsent(key(stored.getUsername()), stored);
+        }
     }
 
-    private List<Grade> parseGrades(String csv) {
-        List<Grade> list = new ArrayList<>();
-        if (csv == null || csv.trim().isEmpty()) return list;
+    private Stream<Student> streamFromDisk() {
+        // segments only hold recently upserted students, so their latest records fit in memory
+        Map<String, Student> overrides = new LinkedHashMap<>();
+        // once open, the master stays readable even if it is renamed over, so the lock is only held until then
+        BufferedReader reader = masterLock.shared(() -> {
+            if (segmentLog != null) {
+                for (File segment : segmentLog.listSegments()) {
+                    for (String line : FileHandler.readAllLines(segment.getPath())) {
+                        line = line.trim();
+                        if (line.isEmpty()) continue;
+                        Student s = StudentRecordParser.parseStudentLine(line);
+                        if (s != null) overrides.put(key(s.getStudentId()), s);
+                    }
+                }
+            }
 
-        String[] items = csv.split(",", -1);
-        for (String it : items) {
-            it = it.trim();
-            if (it.isEmpty()) continue;
-            String[] kv = it.split(":", 2);
-            if (kv.length != 2) continue;
-            String subject = kv[0].trim();
+            FileHandler.ensureFileExists(DataPaths.STUDENTS_MASTER);
             try {
-                int score = Integer.parseInt(kv[1].trim());
-                list.add(new Grade(subject, score));
-            } catch (NumberFormatException ignored) {}
+                return Files.newBufferedReader(Path.of(DataPaths.STUDENTS_MASTER), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read file: " + DataPaths.STUDENTS_MASTER, e);
+            }
+        });
+
+        Stream<Student> master = reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .map(StudentRecordParser::parseStudentLine)
+                .filter(Objects::nonNull)
+                .map(s -> {
+                    Student newer = overrides.remove(key(s.getStudentId()));
+                    return newer != null ? newer : s;
+                });
+        // students that so far only exist in segments come last, as they would after a load
+        Stream<Student> added = Stream.of(overrides).flatMap(m -> m.values().stream());
+
+        return Stream.concat(master, added).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Before the store is loaded, a projected read is answered from the mapped
+    // master file rather than paying for a full load. Segments may hold newer
+    // records than the master, so that mode always goes through the store.
+    private boolean canScanMasterDirectly() {
+        return segmentLog == null && MappedStudentReader.isSupported() && (resident == null || !isCurrent());
+    }
+
+    private Optional<StudentCredentials> scanCredentials(int field, String value) {
+        StudentCredentials[] found = new StudentCredentials[1];
+        masterLock.shared(() -> MappedStudentReader.scan(DataPaths.STUDENTS_MASTER, r -> {
+            if (r.fieldCount() < 4 || !r.fieldEqualsIgnoreCase(field, value)) return true;
+            found[0] = new StudentCredentials(r.field(0), r.field(2), r.field(3));
+            return false;
+        }));
+        return Optional.ofNullable(found[0]);
+    }
+
+    private static StudentCredentials credentialsOf(Student s) {
+        return new StudentCredentials(s.getStudentId(), s.getUsername(), s.getEncryptedPassword());
+    }
+
+    private Resident current() {
+        Resident r = resident;
+        if (r != null && isCurrent()) return r;
+        synchronized (this) {
+            ensureLoaded();
+            return resident;
+        }
+    }
+
+    private boolean isCurrent() {
+        Fingerprint fp = loaded;
+        if (fp == null) return false;
+        return fp.sameAs(fingerprint(segmentLog == null ? 0 : segmentLog.fingerprint()));
+    }
+
+    private void ensureLoaded() {
+        if (resident != null && isCurrent()) return;
+
+        boolean firstLoad = resident == null;
+        List<String> crashed = firstLoad && checkpointer != null ? claimRunMarker() : List.of();
+        // master and segments are read as one state, not midway through another instance's compaction
+        boolean parsed = masterLock.shared(() -> {
+            if (firstLoad && checkpointer != null) {
+                Resident fromSnapshot = loadSnapshot(crashed);
+                if (fromSnapshot != null) {
+                    resident = fromSnapshot;
+                    rememberFingerprint();
+                    return false;
+                }
+            }
+
+            Resident fresh = new Resident();
+            if (MappedStudentReader.isSupported()) {
+                // decode straight from the mapped file instead of materializing every line first
+                MappedStudentReader.scan(DataPaths.STUDENTS_MASTER, r -> {
+                    if (r.fieldCount() >= 4) {
+                        Student s = StudentRecordParser.parseStudentLine(r.line());
+                        if (s != null) addLoaded(fresh, s);
+                    }
+                    return true;
+                });
+            } else {
+                List<String> lines = FileHandler.readAllLines(DataPaths.STUDENTS_MASTER);
+                for (String line : lines) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+                    Student s = StudentRecordParser.parseStudentLine(line);
+                    if (s != null) addLoaded(fresh, s);
+                }
+            }
+
+            if (segmentLog != null) {
+                // replay segments oldest first; the latest record for a studentId wins
+                for (File segment : segmentLog.listSegments()) {
+                    for (String line : FileHandler.readAllLines(segment.getPath())) {
+                        line = line.trim();
+                        if (line.isEmpty()) continue;
+                        Student s = StudentRecordParser.parseStudentLine(line);
+                        if (s != null) put(fresh, s);
+                    }
+                }
+            }
+            resident = fresh;
+            rememberFingerprint();
+            return true;
+        });
+        // a start that had to parse the master leaves a snapshot for the next one;
+        // without one there are no log offsets to replay a crashed instance's tail from
+        if (firstLoad && parsed && checkpointer != null) {
+            for (String marker : crashed) deleteRunMarker(marker);
+            checkpointer.execute(this::checkpointQuietly);
+        }
+    }
+
+    // The snapshot's students plus the segment records written since, or null
+    // when the master file has changed since the snapshot was taken. After a
+    // crash the transaction log lines written since are replayed as well.
+    private Resident loadSnapshot(List<String> crashed) {
+        StudentSnapshot snapshot = StudentSnapshot.readIfMatches(DataPaths.STUDENTS_SNAPSHOT, new File(DataPaths.STUDENTS_MASTER));
+        if (snapshot == null) return null;
+        List<String> tail = segmentLog == null ? List.of() : snapshot.segmentTail(segmentLog);
+        if (tail == null) return null;
+
+        Resident fresh = new Resident();
+        for (Student s : snapshot.getStudents()) addLoaded(fresh, s);
+        for (String line : tail) {
+            Student s = StudentRecordParser.parseStudentLine(line);
+            if (s != null) put(fresh, s);
+        }
+        logsCoveredTo = new long[]{snapshot.getGradesLogFrom(), snapshot.getAttendanceLogFrom()};
+
+        // A crashed instance may have logged grade and attendance lines it never
+        // upserted. Only then is the tail replayed: log order is apply order for a
+        // single writer only (see TransactionLogReplayer), so replaying it on every
+        // start could put back the older of two values other instances raced on.
+        if (!crashed.isEmpty()) {
+            List<Student> replayed = replayLogTail(fresh, snapshot);
+            checkpointer.execute(() -> persistReplayed(replayed, crashed));
+        }
+        return fresh;
+    }
+
+    // Applies the log tail to the loaded students and returns copies of those it changed
+    private static List<Student> replayLogTail(Resident fresh, StudentSnapshot snapshot) {
+        Map<String, List<Mutation>> tail = TransactionLogReplayer.readMutations(
+                DataPaths.gradesLog(), snapshot.getGradesLogFrom(),
+                DataPaths.attendanceLog(), snapshot.getAttendanceLogFrom());
+        List<Student> changed = new ArrayList<>();
+        for (Map.Entry<String, List<Mutation>> e : tail.entrySet()) {
+            Student loaded = fresh.byId.get(key(e.getKey().trim()));
+            if (loaded == null) continue; // registered after the snapshot and not in a segment
+            Student s = copyOf(loaded);
+            for (Mutation m : e.getValue()) m.applyTo(s);
+            if (serializeStudent(s).equals(serializeStudent(loaded))) continue;
+            put(fresh, s);
+            changed.add(copyOf(s));
+        }
+        return changed;
+    }
+
+    // Writes replayed students back through the store, then drops the crash
+    // markers; a failure keeps them, so the next start replays again. Runs on the
+    // checkpointer, since the load holds the master lock shared and cannot take it exclusive.
+    private void persistReplayed(List<Student> replayed, List<String> crashed) {
+        try {
+            int n = 0;
+            if (!replayed.isEmpty()) {
+                for (boolean w : upsertAll(replayed)) if (w) n++;
+            }
+            System.err.println("Replayed transaction log into " + n + " of " + replayed.size()
+                    + " students after a crash of " + crashed);
+            for (String marker : crashed) {
+                if (!marker.equals(runMarker)) deleteRunMarker(marker);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Cannot persist replayed transaction log: " + e.getMessage());
         }
-        return list;
     }
 
-    private List<Attendance> parseAttendance(String csv) {
-        List<Attendance> list = new ArrayList<>();
-        if (csv == null || csv.trim().isEmpty()) return list;
+    // Writes this instance's run marker and returns the markers left by instances
+    // on this host that are gone. One already named after this pid was left by an
+    // earlier process that had the same pid. Markers from other hosts are left
+    // alone, since their owners cannot be checked.
+    private List<String> claimRunMarker() {
+        List<String> crashed = new ArrayList<>();
+        File[] files = new File(DataPaths.DATA_DIR).listFiles((dir, name) ->
+                name.startsWith(RUN_MARKER_PREFIX) && name.endsWith(RUN_MARKER_SUFFIX));
+        for (File f : files == null ? new File[0] : files) {
+            String path = f.getPath();
+            if (f.getAbsoluteFile().equals(new File(runMarker).getAbsoluteFile())) {
+                crashed.add(runMarker);
+                continue;
+            }
+            Map<String, String> owner = new HashMap<>();
+            for (String line : FileHandler.readAllLines(path)) {
+                int eq = line.indexOf('=');
+                if (eq > 0) owner.put(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+            }
+            if (!DataFileLock.host().equals(owner.get("host"))) continue;
+            try {
+                long pid = Long.parseLong(owner.getOrDefault("pid", ""));
+                if (ProcessHandle.of(pid).map(p -> !p.isAlive()).orElse(true)) crashed.add(path);
+            } catch (NumberFormatException e) {
+                // not a marker this class wrote
+            }
+        }
+        try {
+            FileHandler.replaceAllLines(runMarker, List.of("host=" + DataFileLock.host(), "pid=" + ProcessHandle.current().pid()));
+        } catch (RuntimeException e) {
+            System.err.println("Cannot write run marker " + runMarker + ": " + e.getMessage());
+        }
+        return crashed;
+    }
+
+    private static String runMarkerFor(String host, long pid) {
+        return DataPaths.DATA_DIR + File.separator + RUN_MARKER_PREFIX + host.replaceAll("[^A-Za-z0-9._-]", "_")
+                + "-" + pid + RUN_MARKER_SUFFIX;
+    }
 
-        String[] items = csv.split(",", -1);
-        for (String it : items) {
-            it = it.trim();
-            if (it.isEmpty()) continue;
-            String[] kv = it.split(":", 2);
-            if (kv.length != 2) continue;
-            String date = kv[0].trim();
-            String status = kv[1].trim();
-            list.add(new Attendance(date, status));
+    private static void deleteRunMarker(String path) {
+        try {
+            Files.deleteIfExists(Path.of(path));
+            Files.deleteIfExists(Path.of(DataFileLock.lockFileFor(path)));
+        } catch (IOException e) {
+            System.err.println("Cannot delete " + path + ": " + e.getMessage());
         }
-        return list;
     }
 
-    private String serializeStudent(Student s) {
-        // studentId|name|username|encPass|gradesCSV|attendanceCSV
+    // Master rows keep duplicates in place; the indexes point at the first one
+    private static void addLoaded(Resident r, Student s) {
+        r.students.add(s);
+        String id = key(s.getStudentId());
+        if (r.positions.putIfAbsent(id, r.students.size() - 1) == null) r.byId.put(id, s);
+        r.byUsername.putIfAbsent(key(s.getUsername()), s);
+    }
+
+    // The master file alone, segments left out
+    private static Fingerprint masterFingerprint() {
+        return fingerprint(0);
+    }
+
+    private void rememberFingerprint() {
+        loaded = fingerprint(segmentLog == null ? 0 : segmentLog.fingerprint());
+    }
+
+    private static Fingerprint fingerprint(long segments) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(Path.of(DataPaths.STUDENTS_MASTER), BasicFileAttributes.class);
+            return new Fingerprint(a.fileKey(), a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS), segments);
+        } catch (NoSuchFileException e) {
+            return new Fingerprint(null, 0, 0, segments);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + DataPaths.STUDENTS_MASTER, e);
+        }
+    }
+
+    private static String key(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // Callers mutate the students they get back, so the store never hands out its
+    // own instances. Columns that are still encoded are copied as-is.
+    private static Student copyOf(Student s) {
+        Student c = new Student(s.getStudentId(), s.getName(), s.getUsername(), s.getEncryptedPassword());
+        c.setVersion(s.getVersion());
+        if (s.getRawGrades() != null) {
+            c.setRawGrades(s.getRawGrades());
+        } else {
+            c.setGradeBook(s.getGradeBook() == null ? null : s.getGradeBook().copy());
+        }
+        if (s.getRawAttendance() != null) {
+            c.setRawAttendance(s.getRawAttendance());
+        } else {
+            c.setAttendanceBook(s.getAttendanceBook() == null ? null : s.getAttendanceBook().copy());
+        }
+        return c;
+    }
+
+    static String serializeStudent(Student s) {
+        // studentId|name|username|encPass|gradesCSV|attendanceCSV|version
         return s.getStudentId() + "|" +
                 s.getName() + "|" +
                 s.getUsername() + "|" +
                 s.getEncryptedPassword() + "|" +
-                gradesToCSV(s.getGrades()) + "|" +
-                attendanceToCSV(s.getAttendanceRecords());
+                gradesColumn(s) + "|" +
+                attendanceColumn(s) + "|" +
+                s.getVersion();
+    }
+
+    private static String gradesColumn(Student s) {
+        return s.getRawGrades() != null ? s.getRawGrades() : gradesToCSV(s.getGradeBook());
     }
 
-    private String gradesToCSV(List<Grade> grades) {
-        if (grades == null || grades.isEmpty()) return "";
+    private static String attendanceColumn(Student s) {
+        return s.getRawAttendance() != null ? s.getRawAttendance() : attendanceToCSV(s.getAttendanceBook());
+    }
+
+    private static String gradesToCSV(GradeBook grades) {
+        if (grades == null || grades.size() == 0) return "";
         StringBuilder sb = new StringBuilder();
-        for (Grade g : grades) {
-            if (sb.length() > 0) sb.append(",");
-            sb.append(g.getSubject()).append(":").append(g.getScore());
-        }
+        grades.appendCsv(sb);
         return sb.toString();
     }
 
-    private String attendanceToCSV(List<Attendance> att) {
-        if (att == null || att.isEmpty()) return "";
+    private static String attendanceToCSV(AttendanceBook att) {
+        if (att == null || att.size() == 0) return "";
         StringBuilder sb = new StringBuilder();
-        for (Attendance a : att) {
-            if (sb.length() > 0) sb.append(",");
-            sb.append(a.getDate()).append(":").append(a.getStatus());
-        }
+        att.appendCsv(sb);
         return sb.toString();
     }
 }
@@ -0,0 +1,149 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Append-only segment files holding serialized student records. A record in a
+// later segment (or later in the same segment) supersedes earlier ones for the
+// same studentId; the compactor folds everything back into the master file.
+public class StudentSegmentLog {
+    public static final long SEGMENT_MAX_BYTES = 4L * 1024 * 1024;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    // Coarsest directory mtime resolution expected (FAT and some network shares)
+    private static final long MTIME_GRANULARITY_MS = 2000;
+
+    private final File dir;
+    // Segment set as of the last listing; null forces a new one
+    private volatile Listing listing;
+
+    // Only the newest segment is ever appended to, so between creations and
+    // deletions (which change the directory's mtime, in any process) the set is
+    // known from one stat of the directory and one of that segment
+    private static final class Listing {
+        final long dirModified;
+        final File active;
+        final long sealedHash;
+
+        Listing(long dirModified, File active, long sealedHash) {
+            this.dirModified = dirModified;
+            this.active = active;
+            this.sealedHash = sealedHash;
+        }
+    }
+
+    public StudentSegmentLog(String dirPath) {
+        this.dir = new File(dirPath);
+        if (!dir.exists()) dir.mkdirs();
+    }
+
+    public void append(String record) {
+        appendAll(List.of(record));
+    }
+
+    // All records land in one segment with a single append
+    public void appendAll(List<String> records) {
+        File active = activeSegment();
+        if (active.length() >= SEGMENT_MAX_BYTES) {
+            active = segmentFile(numberOf(active) + 1);
+            listing = null;
+        }
+        FileHandler.appendLines(active.getPath(), records, LogAppender.defaultDurability());
+    }
+
+    // Starts a new active segment and returns the number of the last sealed one,
+    // or 0 when there was nothing to seal.
+    public int roll() {
+        List<File> segments = listSegments();
+        if (segments.isEmpty()) return 0;
+        File last = segments.get(segments.size() - 1);
+        FileHandler.ensureFileExists(segmentFile(numberOf(last) + 1).getPath());
+        listing = null;
+        return numberOf(last);
+    }
+
+    public void deleteThrough(int segmentNumber) {
+        for (File f : listSegments()) {
+            if (numberOf(f) <= segmentNumber) {
+                f.delete();
+                new File(DataFileLock.lockFileFor(f.getPath())).delete();
+            }
+        }
+        listing = null;
+    }
+
+    // Oldest first
+    public List<File> listSegments() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) return new ArrayList<>();
+        Arrays.sort(files, (a, b) -> Integer.compare(numberOf(a), numberOf(b)));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    // Number -> length of the segments up to segmentNumber, to tell later whether
+    // they are still the ones that were read
+    public Map<Integer, Long> sizesThrough(int segmentNumber) {
+        Map<Integer, Long> sizes = new TreeMap<>();
+        for (File f : listSegments()) {
+            if (numberOf(f) <= segmentNumber) sizes.put(numberOf(f), f.length());
+        }
+        return sizes;
+    }
+
+    public long totalBytes() {
+        long total = 0;
+        for (File f : listSegments()) total += f.length();
+        return total;
+    }
+
+    // Cheap change detector over the segment set, combined with the master
+    // file's fingerprint. Costs two stats unless a segment was created or
+    // deleted since the last call.
+    public long fingerprint() {
+        Listing l = listing;
+        if (l == null || l.dirModified != dir.lastModified()) l = relist();
+        if (l.active == null) return l.sealedHash;
+        long h = 31 * l.sealedHash + numberOf(l.active);
+        h = 31 * h + l.active.length();
+        return 31 * h + l.active.lastModified();
+    }
+
+    private Listing relist() {
+        // read before listing, so a segment created meanwhile makes the next call list again
+        long dirModified = dir.lastModified();
+        List<File> segments = listSegments();
+        long h = 17;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            File f = segments.get(i);
+            h = 31 * h + numberOf(f);
+            h = 31 * h + f.length();
+            h = 31 * h + f.lastModified();
+        }
+        Listing l = new Listing(dirModified, segments.isEmpty() ? null : segments.get(segments.size() - 1), h);
+        // a directory changed within the timestamp granularity can change again
+        // without its mtime moving, so such a listing is not reused
+        if (System.currentTimeMillis() - dirModified > MTIME_GRANULARITY_MS) listing = l;
+        return l;
+    }
+
+    private File activeSegment() {
+        List<File> segments = listSegments();
+        return segments.isEmpty() ? segmentFile(1) : segments.get(segments.size() - 1);
+    }
+
+    private File segmentFile(int number) {
+        return new File(dir, String.format("%s%06d%s", PREFIX, number, SUFFIX));
+    }
+
+    static int numberOf(File f) {
+        String name = f.getName();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -1,23 +1,60 @@
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 public class StudentService {
+    private static final int LOCK_STRIPES = 64;
+
     private final StudentRepository repo;
 
-    public StudentService() {
-        this.repo = new StudentRepository();
+    // Read-modify-write of one student, together with its transaction log line,
+    // happens under that student's stripe, so updates from this process never
+    // race each other. The versioned upsert still catches writes from other
+    // processes sharing the data directory; those are re-read and re-applied.
+    private final Lock[] stripes = new Lock[LOCK_STRIPES];
+    // Username uniqueness spans every stripe, so adds are serialized among themselves
+    private final Lock registrationLock = new ReentrantLock();
+
+    // Null unless write-behind mode is on; reads then include queued changes
+    private final WriteBehindWriter writeBehind;
+
+    public StudentService(StudentRepository repo) {
+        this(repo, WriteBehindWriter.enabled() ? new WriteBehindWriter(repo) : null);
+    }
+
+    public StudentService(StudentRepository repo, WriteBehindWriter writeBehind) {
+        this.repo = repo;
+        this.writeBehind = writeBehind;
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
     }
 
     public List<Student> getAllStudents() {
-        return repo.loadAllStudents();
+        List<Student> all = repo.loadAllStudents();
+        if (writeBehind != null) all.replaceAll(writeBehind::overlay);
+        return all;
+    }
+
+    // Lazily parsed; close it (try-with-resources) when done
+    public Stream<Student> streamStudents() {
+        Stream<Student> students = repo.streamStudents();
+        return writeBehind == null ? students : students.map(writeBehind::overlay);
     }
 
     public Optional<Student> getByStudentId(String studentId) {
-        return repo.findByStudentId(studentId);
+        Optional<Student> s = repo.findByStudentId(studentId);
+        return writeBehind == null ? s : s.map(writeBehind::overlay);
     }
 
     public Optional<Student> getByUsername(String username) {
-        return repo.findByUsername(username);
+        Optional<Student> s = repo.findByUsername(username);
+        return writeBehind == null ? s : s.map(writeBehind::overlay);
     }
 
     public boolean addStudent(String studentId, String name, String username, String rawPassword) {
@@ -25,49 +62,46 @@ public class StudentService {
         if (username == null || username.isBlank()) return false;
         if (rawPassword == null || rawPassword.isBlank()) return false;
 
-        // uniqueness
-        if (repo.findByStudentId(studentId).isPresent()) return false;
-        if (repo.findByUsername(username).isPresent()) return false;
+        registrationLock.lock();
+        Lock lock = lockFor(studentId);
+        lock.lock();
+        try {
+            // uniqueness
+            if (repo.findCredentialsByStudentId(studentId).isPresent()) return false;
+            if (repo.findCredentialsByUsername(username).isPresent()) return false;
 
-        String enc = CaesarCipher.encrypt(rawPassword, CaesarCipher.DEFAULT_SHIFT);
-        Student s = new Student(studentId.trim(), name == null ? "" : name.trim(), username.trim(), enc);
-        repo.upsertStudent(s);
-        return true;
+            String enc = CaesarCipher.encrypt(rawPassword, CaesarCipher.DEFAULT_SHIFT);
+            Student s = new Student(studentId.trim(), name == null ? "" : name.trim(), username.trim(), enc);
+            // false if the same studentId was written in between
+            return repo.upsertStudent(s);
+        } finally {
+            lock.unlock();
+            registrationLock.unlock();
+        }
     }
 
-    public boolean assignGrade(String studentId, String subject, int score) {
-        Optional<Student> opt = repo.findByStudentId(studentId);
-        if (opt.isEmpty()) return false;
+    // Writes back a student that was read earlier, e.g. held by a dashboard.
+    // Returns false without changing anything if the student has been updated
+    // since it was read; the caller should re-read it and apply its edit again.
+    public boolean saveStudent(Student s) {
+        if (s == null || s.getStudentId() == null) return false;
+        if (repo.findByStudentId(s.getStudentId()).isEmpty()) return false;
+        return repo.upsertStudent(s);
+    }
 
-        Student s = opt.get();
+    public boolean assignGrade(String studentId, String subject, int score) {
+        if (writeBehind != null) return applyBatch(List.of(Mutation.assignGrade(studentId, subject, score))).get(0).isSuccess();
+        if (studentId == null) return false;
         if (subject == null || subject.isBlank()) return false;
         if (score < 0 || score > 100) return false;
 
-        // transaction log first
-        String ts = LocalDateTime.now().toString();
-        FileHandler.appendLine(DataPaths.GRADES_TXN, ts + "|" + studentId + "|" + subject.trim() + "|" + score);
-
-        // update master
-        List<Grade> grades = new ArrayList<>(s.getGrades());
-        boolean updated = false;
-        for (int i = 0; i < grades.size(); i++) {
-            if (grades.get(i).getSubject().equalsIgnoreCase(subject.trim())) {
-                grades.set(i, new Grade(subject.trim(), score));
-                updated = true;
-                break;
-            }
-        }
-        if (!updated) grades.add(new Grade(subject.trim(), score));
-        s.setGrades(grades);
-
-        repo.upsertStudent(s);
-        return true;
+        String line = LocalDateTime.now() + "|" + studentId + "|" + subject.trim() + "|" + score;
+        return update(studentId, DataPaths.gradesLog(), line, Mutation.assignGrade(studentId, subject, score)::applyTo);
     }
 
     public boolean markAttendance(String studentId, String dateYYYYMMDD, String status) {
-        Optional<Student> opt = repo.findByStudentId(studentId);
-        if (opt.isEmpty()) return false;
-
+        if (writeBehind != null) return applyBatch(List.of(Mutation.markAttendance(studentId, dateYYYYMMDD, status))).get(0).isSuccess();
+        if (studentId == null) return false;
         if (dateYYYYMMDD == null || dateYYYYMMDD.isBlank()) return false;
         if (status == null || status.isBlank()) return false;
 
@@ -76,27 +110,291 @@ public class StudentService {
             return false;
         }
 
-        Student s = opt.get();
+        String line = LocalDateTime.now() + "|" + studentId + "|" + dateYYYYMMDD.trim() + "|" + normalizedStatus;
+        return update(studentId, DataPaths.attendanceLog(), line, Mutation.markAttendance(studentId, dateYYYYMMDD, normalizedStatus)::applyTo);
+    }
+
+    // Applies many changes with one append per transaction log and one repository
+    // write (two when it adds students). Every item is validated before anything is written; rejected items
+    // are reported and skipped while the rest go through together. Items apply in
+    // list order, so a batch can add a student and then grade it. The batch holds
+    // the stripes of every student it touches; new students are written first,
+    // and only changes to students that exist are logged and then applied. In
+    // write-behind mode a batch without adds is only logged and queued; batches
+    // that add students are still written through.
+    public List<MutationResult> applyBatch(List<Mutation> batch) {
+        MutationResult[] results = new MutationResult[batch.size()];
+        boolean adds = false;
+        for (Mutation m : batch) {
+            if (m != null && m.getType() == Mutation.Type.ADD_STUDENT) adds = true;
+        }
+
+        // stripes in index order, so two overlapping batches cannot deadlock
+        List<Lock> locks = new ArrayList<>();
+        for (int stripe : stripesOf(batch)) locks.add(stripes[stripe]);
 
-        // transaction log first
-        String ts = java.time.LocalDateTime.now().toString();
-        FileHandler.appendLine(DataPaths.ATTEND_TXN, ts + "|" + studentId + "|" + dateYYYYMMDD.trim() + "|" + normalizedStatus);
+        if (adds) registrationLock.lock();
+        for (Lock lock : locks) lock.lock();
+        try {
+            // lower-cased studentId -> accepted item indexes, and the students this batch creates
+            Map<String, List<Integer>> itemsByStudent = new LinkedHashMap<>();
+            Map<String, Student> added = new HashMap<>();
+            Set<String> addedUsernames = new HashSet<>();
+            String[] lines = new String[batch.size()];
+            String ts = LocalDateTime.now().toString();
 
-        // update master
-        List<Attendance> att = new ArrayList<>(s.getAttendanceRecords());
-        boolean updated = false;
-        for (int i = 0; i < att.size(); i++) {
-            if (att.get(i).getDate().equals(dateYYYYMMDD.trim())) {
-                att.set(i, new Attendance(dateYYYYMMDD.trim(), cap(normalizedStatus)));
-                updated = true;
-                break;
+            for (int i = 0; i < batch.size(); i++) {
+                Mutation m = batch.get(i);
+                String error = validate(m, added, addedUsernames);
+                if (error != null) {
+                    results[i] = MutationResult.failed(m, error);
+                    continue;
+                }
+
+                String id = m.getStudentId().trim();
+                switch (m.getType()) {
+                    case ADD_STUDENT:
+                        String enc = CaesarCipher.encrypt(m.getRawPassword(), CaesarCipher.DEFAULT_SHIFT);
+                        String name = m.getName() == null ? "" : m.getName().trim();
+                        added.put(key(id), new Student(id, name, m.getUsername().trim(), enc));
+                        addedUsernames.add(key(m.getUsername().trim()));
+                        break;
+                    case ASSIGN_GRADE:
+                        lines[i] = ts + "|" + id + "|" + m.getSubject().trim() + "|" + m.getScore();
+                        break;
+                    case MARK_ATTENDANCE:
+                        lines[i] = ts + "|" + id + "|" + m.getDate().trim() + "|" + m.getStatus().trim();
+                        break;
+                }
+                itemsByStudent.computeIfAbsent(key(id), k -> new ArrayList<>()).add(i);
+            }
+
+            if (writeBehind != null && added.isEmpty()) {
+                // acknowledged once the lines are durable; the writer applies them later
+                List<Mutation> accepted = new ArrayList<>();
+                for (List<Integer> items : itemsByStudent.values()) {
+                    for (int i : items) accepted.add(batch.get(i));
+                }
+                List<String> gradeLines = new ArrayList<>();
+                List<String> attendanceLines = new ArrayList<>();
+                collectLines(batch, lines, itemsByStudent.values(), gradeLines, attendanceLines);
+                writeBehind.submit(gradeLines, attendanceLines, accepted);
+                for (List<Integer> items : itemsByStudent.values()) {
+                    for (int i : items) results[i] = MutationResult.ok(batch.get(i));
+                }
+                return Arrays.asList(results);
+            }
+            // queued changes are older than this batch, so they go in first
+            if (writeBehind != null) writeBehind.flush();
+
+            // new students first: one that loses to another writer adding the same
+            // studentId takes its items down with it, before any of them is logged
+            if (!added.isEmpty()) {
+                List<String> keys = new ArrayList<>(added.keySet());
+                List<Student> students = new ArrayList<>();
+                for (String k : keys) students.add(added.get(k));
+                boolean[] written = repo.upsertAll(students);
+                for (int j = 0; j < keys.size(); j++) {
+                    if (written[j]) continue;
+                    for (int i : itemsByStudent.remove(keys.get(j))) {
+                        results[i] = MutationResult.failed(batch.get(i), "Student ID already exists");
+                    }
+                }
+                for (List<Integer> items : itemsByStudent.values()) {
+                    for (int i : items) {
+                        if (lines[i] == null) results[i] = MutationResult.ok(batch.get(i));
+                    }
+                }
+            }
+
+            // transaction logs next, one append each, then the master
+            List<String> gradeLines = new ArrayList<>();
+            List<String> attendanceLines = new ArrayList<>();
+            collectLines(batch, lines, itemsByStudent.values(), gradeLines, attendanceLines);
+            if (!gradeLines.isEmpty()) {
+                FileHandler.appendLines(DataPaths.gradesLog(), gradeLines, LogAppender.defaultDurability());
+            }
+            if (!attendanceLines.isEmpty()) {
+                FileHandler.appendLines(DataPaths.attendanceLog(), attendanceLines, LogAppender.defaultDurability());
+            }
+
+            // one upsertAll per round; under the stripes only another process can
+            // win a version race, and those students are re-read until their change lands
+            Map<String, List<Integer>> pending = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Integer>> e : itemsByStudent.entrySet()) {
+                List<Integer> changes = new ArrayList<>();
+                for (int i : e.getValue()) {
+                    if (lines[i] != null) changes.add(i);
+                }
+                if (!changes.isEmpty()) pending.put(e.getKey(), changes);
             }
+            while (!pending.isEmpty()) {
+                List<String> keys = new ArrayList<>();
+                List<Student> students = new ArrayList<>();
+                for (Map.Entry<String, List<Integer>> e : pending.entrySet()) {
+                    List<Integer> items = e.getValue();
+                    Student s = repo.findByStudentId(batch.get(items.get(0)).getStudentId().trim()).orElse(null);
+                    if (s == null) {
+                        // validated as existing and nothing deletes students; the lines stay as logged
+                        for (int i : items) results[i] = MutationResult.failed(batch.get(i), "Student not found");
+                        continue;
+                    }
+                    for (int i : items) batch.get(i).applyTo(s);
+                    keys.add(e.getKey());
+                    students.add(s);
+                }
+                if (students.isEmpty()) break;
+
+                boolean[] written = repo.upsertAll(students);
+                Map<String, List<Integer>> lost = new LinkedHashMap<>();
+                for (int j = 0; j < keys.size(); j++) {
+                    List<Integer> items = pending.get(keys.get(j));
+                    if (written[j]) {
+                        for (int i : items) results[i] = MutationResult.ok(batch.get(i));
+                    } else {
+                        lost.put(keys.get(j), items);
+                    }
+                }
+                pending = lost;
+                if (!pending.isEmpty()) Thread.onSpinWait();
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+            if (adds) registrationLock.unlock();
         }
-        if (!updated) att.add(new Attendance(dateYYYYMMDD.trim(), cap(normalizedStatus)));
-        s.setAttendanceRecords(att);
+        return Arrays.asList(results);
+    }
 
-        repo.upsertStudent(s);
-        return true;
+    // The logged items of the given students, in batch order
+    private static void collectLines(List<Mutation> batch, String[] lines, Collection<List<Integer>> items,
+                                     List<String> gradeLines, List<String> attendanceLines) {
+        List<Integer> order = new ArrayList<>();
+        for (List<Integer> l : items) order.addAll(l);
+        Collections.sort(order);
+        for (int i : order) {
+            if (lines[i] == null) continue;
+            if (batch.get(i).getType() == Mutation.Type.ASSIGN_GRADE) gradeLines.add(lines[i]);
+            else attendanceLines.add(lines[i]);
+        }
+    }
+
+    private SortedSet<Integer> stripesOf(List<Mutation> batch) {
+        SortedSet<Integer> indexes = new TreeSet<>();
+        for (Mutation m : batch) {
+            if (m != null && m.getStudentId() != null && !m.getStudentId().isBlank()) {
+                indexes.add(stripeIndex(m.getStudentId().trim()));
+            }
+        }
+        return indexes;
+    }
+
+    // Grade and attendance changes logged in [from, to), oldest first. Both logs
+    // are indexed by timestamp (TransactionLogIndex), so only the stretch of log
+    // around the range is read. Stops as soon as visitor returns false.
+    public void forEachActivity(LocalDateTime from, LocalDateTime to, boolean grades, boolean attendance,
+                                Predicate<ActivityEntry> visitor) {
+        long fromMicros = BinaryTransactionLog.toMicros(from);
+        long toMicros = BinaryTransactionLog.toMicros(to);
+        if (grades && attendance) {
+            forEachActivityMerged(fromMicros, toMicros, visitor);
+        } else if (grades) {
+            TransactionLogIndex.query(DataPaths.gradesLog(), fromMicros, toMicros, (ts, id, subject, score) ->
+                    visitor.test(new ActivityEntry(BinaryTransactionLog.toDateTime(ts), ActivityEntry.GRADE, id, subject, score)));
+        } else if (attendance) {
+            TransactionLogIndex.query(DataPaths.attendanceLog(), fromMicros, toMicros, (ts, id, date, status) ->
+                    visitor.test(new ActivityEntry(BinaryTransactionLog.toDateTime(ts), ActivityEntry.ATTENDANCE, id, date, status)));
+        }
+    }
+
+    // Each log is already in timestamp order, so the two are merged as they are
+    // read: the grades log here, the attendance log on a reader thread that stays
+    // at most a queue's length ahead. On equal stamps the grade comes first.
+    private void forEachActivityMerged(long from, long to, Predicate<ActivityEntry> visitor) {
+        ActivityFeed attendance = new ActivityFeed(DataPaths.attendanceLog(), from, to);
+        try {
+            boolean[] stopped = {false};
+            TransactionLogIndex.query(DataPaths.gradesLog(), from, to, (ts, id, subject, score) -> {
+                ActivityEntry grade = new ActivityEntry(BinaryTransactionLog.toDateTime(ts), ActivityEntry.GRADE, id, subject, score);
+                ActivityEntry earlier;
+                while ((earlier = attendance.nextBefore(grade.getTimestamp())) != null) {
+                    if (!visitor.test(earlier)) {
+                        stopped[0] = true;
+                        return false;
+                    }
+                }
+                stopped[0] = !visitor.test(grade);
+                return !stopped[0];
+            });
+            ActivityEntry rest;
+            while (!stopped[0] && (rest = attendance.nextBefore(null)) != null) stopped[0] = !visitor.test(rest);
+        } finally {
+            attendance.close();
+        }
+    }
+
+    // Attendance entries of one query, handed over through a bounded queue
+    private static final class ActivityFeed {
+        private static final ActivityEntry END = new ActivityEntry(null, null, null, null, null);
+
+        private final BlockingQueue<ActivityEntry> queue = new ArrayBlockingQueue<>(1024);
+        private volatile boolean closed;
+        private volatile RuntimeException failure;
+        private ActivityEntry head;
+        private boolean ended;
+
+        ActivityFeed(String log, long from, long to) {
+            Thread reader = new Thread(() -> {
+                try {
+                    TransactionLogIndex.query(log, from, to, (ts, id, date, status) ->
+                            offer(new ActivityEntry(BinaryTransactionLog.toDateTime(ts), ActivityEntry.ATTENDANCE, id, date, status)));
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    offer(END);
+                }
+            }, "activity-attendance-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        // False once the merge has stopped; never interrupted, which would
+        // close the log files under the query
+        private boolean offer(ActivityEntry e) {
+            try {
+                while (!closed) {
+                    if (queue.offer(e, 100, TimeUnit.MILLISECONDS)) return true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        // The next entry stamped before limit (or any, if limit is null); null if there is none
+        ActivityEntry nextBefore(LocalDateTime limit) {
+            if (head == null && !ended) {
+                try {
+                    head = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted reading file: " + DataPaths.attendanceLog(), e);
+                }
+                if (head == END) {
+                    head = null;
+                    ended = true;
+                    if (failure != null) throw failure;
+                }
+            }
+            if (head == null || (limit != null && !head.getTimestamp().isBefore(limit))) return null;
+            ActivityEntry next = head;
+            head = null;
+            return next;
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+        }
     }
 
     public String buildStudentSummary(Student s) {
@@ -116,9 +414,90 @@ public class StudentService {
         return sb.toString();
     }
 
-    private String cap(String s) {
-        if (s == null || s.isEmpty()) return s;
-        String lower = s.toLowerCase();
-        return Character.toUpperCase(lower.charAt(0)) + lower.substring(1);
+    // Reason the item would be rejected, or null. Students added earlier in the
+    // same batch count as existing.
+    private String validate(Mutation m, Map<String, Student> added, Set<String> addedUsernames) {
+        String error = checkFields(m);
+        if (error != null) return error;
+        String id = m.getStudentId().trim();
+        boolean exists = added.containsKey(key(id)) || repo.existsByStudentId(id);
+
+        switch (m.getType()) {
+            case ADD_STUDENT:
+                if (exists) return "Student ID already exists";
+                String username = m.getUsername().trim();
+                if (addedUsernames.contains(key(username)) || repo.existsByUsername(username)) {
+                    return "Username already taken";
+                }
+                return null;
+            default:
+                return exists ? null : "Student not found";
+        }
+    }
+
+    // The checks that need nothing but the item itself
+    private static String checkFields(Mutation m) {
+        if (m == null || m.getType() == null) return "Missing mutation";
+        if (m.getStudentId() == null || m.getStudentId().isBlank()) return "Student ID is required";
+
+        switch (m.getType()) {
+            case ADD_STUDENT:
+                if (m.getUsername() == null || m.getUsername().isBlank()) return "Username is required";
+                if (m.getRawPassword() == null || m.getRawPassword().isBlank()) return "Password is required";
+                return null;
+            case ASSIGN_GRADE:
+                if (m.getSubject() == null || m.getSubject().isBlank()) return "Subject is required";
+                if (m.getScore() < 0 || m.getScore() > 100) return "Score must be between 0 and 100";
+                return null;
+            default:
+                if (m.getDate() == null || m.getDate().isBlank()) return "Date is required";
+                String status = m.getStatus() == null ? "" : m.getStatus().trim();
+                if (!status.equalsIgnoreCase("Present") && !status.equalsIgnoreCase("Absent")) {
+                    return "Status must be Present or Absent";
+                }
+                return null;
+        }
+    }
+
+    private static String key(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // Under the student's stripe: logs line, then applies change to a fresh copy
+    // of the student and writes it back with the version that copy was read at.
+    // Only another process can have written in between; the change is then
+    // re-applied on top of the newer record until it lands, so a logged line is
+    // always applied. Returns false, logging nothing, if the student does not exist.
+    private boolean update(String studentId, String logPath, String line, Consumer<Student> change) {
+        Lock lock = lockFor(studentId);
+        lock.lock();
+        try {
+            Optional<Student> opt = repo.findByStudentId(studentId);
+            if (opt.isEmpty()) return false;
+
+            // transaction log first
+            FileHandler.appendLine(logPath, line);
+
+            // update master
+            while (true) {
+                Student s = opt.get();
+                change.accept(s);
+                if (repo.upsertStudent(s)) return true;
+                Thread.onSpinWait();
+                opt = repo.findByStudentId(studentId);
+                // nothing deletes students; the line stays as logged
+                if (opt.isEmpty()) return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lock lockFor(String studentId) {
+        return stripes[stripeIndex(studentId.trim())];
+    }
+
+    private static int stripeIndex(String studentId) {
+        return (key(studentId).hashCode() & 0x7fffffff) % LOCK_STRIPES;
     }
 }
@@ -0,0 +1,96 @@
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Concurrent update check for StudentService: many threads edit a few students
+// through two services and the result is compared with what was acknowledged.
+//
+// Headless: java StudentServiceStress [threads] [updatesPerThread] [students]
+//           (run from an empty directory: writes ./data, checks for lost updates)
+public class StudentServiceStress {
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 3) {
+            System.err.println("Usage: java StudentServiceStress [threads] [updatesPerThread] [students]");
+            System.exit(2);
+        }
+        DataPaths.ensureDataFiles();
+        if (new File(DataPaths.STUDENTS_MASTER).length() > 0) {
+            System.err.println("Needs an empty data directory: " + new File(DataPaths.DATA_DIR).getAbsolutePath());
+            System.exit(2);
+        }
+        stress(args.length >= 1 ? Integer.parseInt(args[0]) : 16, args.length >= 2 ? Integer.parseInt(args[1]) : 60,
+                args.length == 3 ? Integer.parseInt(args[2]) : 40);
+    }
+
+    // Two services over separate repositories (as two processes sharing the data
+    // directory would be) update a few students from many threads. Every grade
+    // and attendance day is distinct, so a fresh read must find all of them, and
+    // the logs must hold exactly the changes that were acknowledged.
+    private static void stress(int threads, int updatesPerThread, int studentCount) throws InterruptedException {
+        StudentService[] services = {new StudentService(new StudentRepository(), null), new StudentService(new StudentRepository(), null)};
+        for (int i = 0; i < studentCount; i++) services[0].addStudent("STRESS" + i, "Student " + i, "stress" + i, "pw");
+
+        int[] acknowledged = new int[1];
+        int[] failed = new int[1];
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread w = new Thread(() -> {
+                StudentService service = services[thread % 2];
+                Random rnd = new Random(thread);
+                int ok = 0;
+                int bad = 0;
+                for (int k = 0; k < updatesPerThread; k++) {
+                    String id = "STRESS" + rnd.nextInt(studentCount);
+                    String subject = "T" + thread + "-" + k;
+                    String date = LocalDate.of(2000, 1, 1).plusDays((long) thread * updatesPerThread + k).toString();
+                    switch (k % 3) {
+                        case 0:
+                            if (service.assignGrade(id, subject, k % 101)) ok++; else bad++;
+                            break;
+                        case 1:
+                            if (service.markAttendance(id, date, k % 2 == 0 ? "Present" : "Absent")) ok++; else bad++;
+                            break;
+                        default:
+                            // one batch over three students, to cross stripes
+                            List<Mutation> batch = List.of(
+                                    Mutation.assignGrade(id, subject, k % 101),
+                                    Mutation.assignGrade("STRESS" + rnd.nextInt(studentCount), subject + "b", k % 101),
+                                    Mutation.markAttendance("STRESS" + rnd.nextInt(studentCount), date, "Present"));
+                            for (MutationResult r : service.applyBatch(batch)) {
+                                if (r.isSuccess()) ok++; else bad++;
+                            }
+                    }
+                }
+                synchronized (acknowledged) {
+                    acknowledged[0] += ok;
+                    failed[0] += bad;
+                }
+            }, "stress-" + t);
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) w.join();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        int stored = 0;
+        for (Student s : new StudentRepository().loadAllStudents()) {
+            for (Grade g : s.getGrades()) {
+                if (g.getSubject().startsWith("T")) stored++;
+            }
+            stored += s.getAttendanceRecords().size();
+        }
+        int logged = 0;
+        for (List<Mutation> l : TransactionLogReplayer.readMutations(DataPaths.gradesLog(), 0, DataPaths.attendanceLog(), 0).values()) {
+            logged += l.size();
+        }
+        System.out.println(threads + " threads, " + acknowledged[0] + " acknowledged, " + failed[0] + " rejected, "
+                + stored + " stored, " + logged + " logged, in " + ms + " ms");
+        boolean lost = stored != acknowledged[0] || logged != acknowledged[0] || failed[0] > 0;
+        System.out.println(lost ? "LOST UPDATES" : "no lost updates");
+        System.exit(lost ? 1 : 0);
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary checkpoint of the whole student store (data/students.snapshot). Besides
+// the students in master-file order (in BinaryStudentFormat) it records what the state was built from:
+// the master file's length and modification time, the length of every student
+// segment, and how far each transaction log had been written.
+//
+// StudentRepository loads it instead of parsing the master file when the master
+// is unchanged since the checkpoint, then replays only the segment records and
+// transaction log lines written after it. If the master file is lost, restore rebuilds one from the
+// snapshot plus the transaction log tail (students registered after the
+// checkpoint are not in the logs and cannot come back that way).
+//
+// Headless: java StudentSnapshot restore <out-master>
+public class StudentSnapshot {
+    private static final int MAGIC = 0x53495353; // "SISS"
+    // 2: students in BinaryStudentFormat
+    private static final int FORMAT = 2;
+
+    private final long masterLength;
+    private final long masterModified;
+    // segment number -> length at checkpoint time
+    private final Map<Integer, Long> segments;
+    // transaction log lengths the logs are certainly reflected up to
+    private final long gradesLogFrom;
+    private final long attendanceLogFrom;
+    private final long createdMillis;
+    private final List<Student> students;
+
+    public StudentSnapshot(long masterLength, long masterModified, Map<Integer, Long> segments,
+                           long gradesLogFrom, long attendanceLogFrom, long createdMillis, List<Student> students) {
+        this.masterLength = masterLength;
+        this.masterModified = masterModified;
+        this.segments = segments;
+        this.gradesLogFrom = gradesLogFrom;
+        this.attendanceLogFrom = attendanceLogFrom;
+        this.createdMillis = createdMillis;
+        this.students = students;
+    }
+
+    public long getMasterLength() { return masterLength; }
+    public long getMasterModified() { return masterModified; }
+    public Map<Integer, Long> getSegments() { return segments; }
+    public long getGradesLogFrom() { return gradesLogFrom; }
+    public long getAttendanceLogFrom() { return attendanceLogFrom; }
+    public long getCreatedMillis() { return createdMillis; }
+    public List<Student> getStudents() { return students; }
+
+    public void write(String path) {
+        FileHandler.replaceFile(path, raw -> {
+            DataOutputStream out = new DataOutputStream(raw);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(createdMillis);
+            out.writeLong(masterLength);
+            out.writeLong(masterModified);
+            out.writeInt(segments.size());
+            for (Map.Entry<Integer, Long> e : segments.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeLong(e.getValue());
+            }
+            out.writeLong(gradesLogFrom);
+            out.writeLong(attendanceLogFrom);
+            out.writeInt(students.size());
+            out.flush();
+            BinaryStudentFormat.Writer records = new BinaryStudentFormat.Writer(raw, false);
+            for (Student s : students) records.write(s);
+            records.finish();
+        });
+    }
+
+    // Null when there is no snapshot or it cannot be read; the caller then falls back to the master file
+    public static StudentSnapshot read(String path) {
+        return read(path, null);
+    }
+
+    // As read, but also null (without reading the students) when the snapshot
+    // was not taken of this master file
+    public static StudentSnapshot readIfMatches(String path, File master) {
+        return read(path, master);
+    }
+
+    private static StudentSnapshot read(String path, File master) {
+        File f = new File(path);
+        if (!f.exists() || f.length() == 0) return null;
+        return DataFileLock.forPath(path).shared(() -> {
+            try (InputStream raw = new BufferedInputStream(Files.newInputStream(f.toPath()), 1 << 16)) {
+                DataInputStream in = new DataInputStream(raw);
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT) return null;
+                long created = in.readLong();
+                long length = in.readLong();
+                long modified = in.readLong();
+                if (master != null && (master.length() != length || master.lastModified() != modified)) return null;
+                int segmentCount = in.readInt();
+                Map<Integer, Long> segments = new LinkedHashMap<>();
+                for (int i = 0; i < segmentCount; i++) segments.put(in.readInt(), in.readLong());
+                long gradesFrom = in.readLong();
+                long attendanceFrom = in.readLong();
+                int count = in.readInt();
+                List<Student> students = new ArrayList<>(count);
+                BinaryStudentFormat.Reader records = new BinaryStudentFormat.Reader(in);
+                Student s;
+                while ((s = records.next()) != null) students.add(s);
+                if (students.size() != count) throw new IOException("Expected " + count + " students, found " + students.size());
+                return new StudentSnapshot(length, modified, segments, gradesFrom, attendanceFrom, created, students);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable snapshot " + path + ": " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    // Master-file records appended to the segments after the snapshot was taken,
+    // oldest first; null if a segment it recorded has since shrunk or gone
+    // (a compaction happened, so the master has changed too)
+    public List<String> segmentTail(StudentSegmentLog segmentLog) {
+        List<String> records = new ArrayList<>();
+        List<File> current = segmentLog.listSegments();
+        for (Map.Entry<Integer, Long> e : segments.entrySet()) {
+            boolean present = false;
+            for (File f : current) {
+                if (StudentSegmentLog.numberOf(f) == e.getKey()) present = f.length() >= e.getValue();
+            }
+            if (!present) return null;
+        }
+        for (File f : current) {
+            long from = segments.getOrDefault(StudentSegmentLog.numberOf(f), 0L);
+            if (f.length() <= from) continue;
+            for (String line : readLinesFrom(f, from)) {
+                line = line.trim();
+                if (!line.isEmpty()) records.add(line);
+            }
+        }
+        return records;
+    }
+
+    // Rebuilds student state from the snapshot plus everything logged since it
+    public TransactionLogReplayer.Result restore() {
+        return TransactionLogReplayer.rebuild(students, DataPaths.gradesLog(), gradesLogFrom,
+                DataPaths.attendanceLog(), attendanceLogFrom);
+    }
+
+    private static List<String> readLinesFrom(File f, long offset) {
+        return DataFileLock.forPath(f.getPath()).shared(() -> {
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                in.skipNBytes(offset);
+                String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                return new ArrayList<>(text.lines().toList());
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read file: " + f, e);
+            }
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !args[0].equals("restore")) {
+            System.err.println("Usage: java StudentSnapshot restore <out-master>");
+            System.exit(2);
+        }
+        StudentSnapshot snapshot = read(DataPaths.STUDENTS_SNAPSHOT);
+        if (snapshot == null) {
+            System.err.println("No readable snapshot at " + DataPaths.STUDENTS_SNAPSHOT);
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        TransactionLogReplayer.Result result = snapshot.restore();
+        TransactionLogReplayer.writeMaster(result.getStudents(), args[1]);
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(result.summary() + " in " + ms + " ms -> " + args[1]);
+    }
+}
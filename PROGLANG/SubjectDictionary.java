@@ -0,0 +1,35 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Process-wide dictionary of subject names. Every distinct subject string is
+// stored once and referred to by a small int id from GradeBook.
+public class SubjectDictionary {
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    // Readers index this without locking; it is only ever replaced by a larger copy
+    private static volatile String[] names = new String[64];
+    private static int count;
+
+    private SubjectDictionary() {}
+
+    public static int intern(String subject) {
+        synchronized (IDS) {
+            Integer id = IDS.get(subject);
+            if (id != null) return id;
+            if (count == names.length) names = Arrays.copyOf(names, count * 2);
+            names[count] = subject;
+            IDS.put(subject, count);
+            return count++;
+        }
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+
+    public static int size() {
+        synchronized (IDS) {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Sparse timestamp index over the segments of a transaction log, for "what
+// changed between these two times" without reading the whole log. Each segment
+// is cut into blocks (about BLOCK_BYTES of whole lines for text, one run between
+// restarts for binary) and the index keeps every block's start and its lowest
+// and highest timestamp. Appends arrive nearly in time order, so a query
+// binary-searches for the first block whose running maximum reaches the range
+// start and the last whose trailing minimum lies before the range end, and
+// decodes only the blocks in between.
+//
+// A closed segment keeps its index next to it (<segment>.idx, without ".gz"),
+// written when it is compressed, or by the first query if it stays plain.
+// Compression writes one gzip member per block so a query can seek to a block;
+// segments compressed before there was an index are decompressed from the
+// start instead. The live segment's index lives in memory and is extended as
+// the file grows.
+//
+// Headless: java TransactionLogIndex <log> <from> <to>   (yyyy-MM-ddTHH:mm[:ss])
+public class TransactionLogIndex {
+    static final int BLOCK_BYTES = 256 * 1024;
+    private static final int MAGIC = 0x53495358; // "SISX"
+    private static final int FORMAT = 1;
+    // live segment path@base -> its index so far
+    private static final Map<String, Blocks> LIVE = new HashMap<>();
+
+    public interface EntryVisitor {
+        // false stops the query
+        boolean visit(long epochMicros, String studentId, String field, String value);
+    }
+
+    // What a query read, for sizing BLOCK_BYTES and for the dashboard
+    public static class Stats {
+        private int blocks;
+        private int blocksRead;
+        private long entries;
+
+        public int getBlocks() { return blocks; }
+        public int getBlocksRead() { return blocksRead; }
+        public long getEntries() { return entries; }
+
+        @Override
+        public String toString() {
+            return entries + " entries from " + blocksRead + " of " + blocks + " blocks";
+        }
+    }
+
+    // Thrown through the decoders when the visitor asks to stop
+    private static final class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stop() {
+            super(null, null, false, false);
+        }
+    }
+
+    // Block table of one segment; offsets are into its decompressed bytes
+    static final class Blocks {
+        boolean compressed;
+        int count;
+        long[] offset = new long[16];
+        long[] gzOffset = new long[16];
+        long[] minTs = new long[16];
+        long[] maxTs = new long[16];
+        // end of the last whole line or record indexed
+        long indexedTo;
+        long[] runningMax;
+        long[] trailingMin;
+
+        void startBlock(long at) {
+            if (count == offset.length) {
+                offset = Arrays.copyOf(offset, count * 2);
+                gzOffset = Arrays.copyOf(gzOffset, count * 2);
+                minTs = Arrays.copyOf(minTs, count * 2);
+                maxTs = Arrays.copyOf(maxTs, count * 2);
+            }
+            offset[count] = at;
+            gzOffset[count] = -1;
+            minTs[count] = Long.MAX_VALUE;
+            maxTs[count] = Long.MIN_VALUE;
+            count++;
+        }
+
+        void add(long ts) {
+            if (ts == Long.MIN_VALUE) return;
+            minTs[count - 1] = Math.min(minTs[count - 1], ts);
+            maxTs[count - 1] = Math.max(maxTs[count - 1], ts);
+        }
+
+        // Drops the last block so it can be scanned again as the file grows
+        long reopenLast() {
+            count--;
+            return offset[count];
+        }
+
+        void prepare() {
+            runningMax = new long[count];
+            trailingMin = new long[count];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) runningMax[i] = max = Math.max(max, maxTs[i]);
+            long min = Long.MAX_VALUE;
+            for (int i = count - 1; i >= 0; i--) trailingMin[i] = min = Math.min(min, minTs[i]);
+        }
+
+        // First block holding anything at or after from
+        int firstReaching(long from) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runningMax[mid] >= from) hi = mid;
+                else lo = mid + 1;
+            }
+            return lo;
+        }
+
+        // Last block holding anything before to
+        int lastBefore(long to) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (trailingMin[mid] >= to) hi = mid;
+                else lo = mid + 1;
+            }
+            return lo - 1;
+        }
+    }
+
+    private TransactionLogIndex() {}
+
+    // Entries stamped in [from, to) (BinaryTransactionLog micros), segment by
+    // segment in log order
+    public static Stats query(String path, long from, long to, EntryVisitor visitor) {
+        Stats stats = new Stats();
+        if (from >= to) return stats;
+        boolean binary = BinaryTransactionLog.isBinary(path);
+        // appends and rolls hold the exclusive lock, so each segment ends on a whole batch
+        List<TransactionLogSegments.Segment> segments =
+                DataFileLock.forPath(path).shared(() -> TransactionLogSegments.forPath(path).segments());
+        try {
+            for (TransactionLogSegments.Segment s : segments) {
+                if (s.getEnd() == s.getBase()) continue;
+                querySegment(s, path, binary, from, to, visitor, stats);
+            }
+        } catch (Stop e) {
+            // the visitor has what it wanted
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + path, e);
+        }
+        return stats;
+    }
+
+    private static void querySegment(TransactionLogSegments.Segment s, String path, boolean binary,
+                                     long from, long to, EntryVisitor visitor, Stats stats) throws IOException {
+        Blocks b = s.isLive() ? liveBlocks(s, path, binary) : closedBlocks(s, binary);
+        stats.blocks += b.count;
+        int first = b.firstReaching(from);
+        int last = b.lastBefore(to);
+        if (first > last) return;
+        stats.blocksRead += last - first + 1;
+
+        long start = b.offset[first];
+        long end = last + 1 < b.count ? b.offset[last + 1] : b.indexedTo;
+        long base = s.getBase();
+        try (InputStream in = openBlock(s, b, first)) {
+            if (binary) {
+                BinaryTransactionLog.decodeFrom(in, base, base + start, base + start, base + end, r -> {
+                    long ts = r.getRawLine() != null ? Long.MIN_VALUE : r.getEpochMicros();
+                    if (ts < from || ts >= to) return;
+                    stats.entries++;
+                    String value = r.isNumeric() ? Long.toString(r.getNumber()) : r.getText();
+                    if (!visitor.visit(ts, r.getStudentId(), r.getField(), value)) throw new Stop();
+                });
+            } else {
+                forEachLine(in, start, end, (bytes, lineFrom, lineTo, at) -> {
+                    int p1 = indexOf(bytes, lineFrom, lineTo);
+                    long ts = p1 < 0 ? Long.MIN_VALUE : TransactionLogReplayer.timestampKey(bytes, lineFrom, p1);
+                    if (ts < from || ts >= to) return;
+                    int p2 = indexOf(bytes, p1 + 1, lineTo);
+                    int p3 = lastIndexOf(bytes, lineFrom, lineTo);
+                    if (p2 < 0 || p3 < p2) return;
+                    stats.entries++;
+                    if (!visitor.visit(ts, text(bytes, p1 + 1, p2), text(bytes, p2 + 1, p3), text(bytes, p3 + 1, lineTo))) {
+                        throw new Stop();
+                    }
+                });
+            }
+        }
+    }
+
+    // A plain segment compressed since it was listed is read from its .gz by
+    // openAt, from the start
+    private static InputStream openBlock(TransactionLogSegments.Segment s, Blocks b, int block) throws IOException {
+        if (!s.isCompressed() || b.gzOffset[block] < 0) return s.openAt(s.getBase() + b.offset[block]);
+        InputStream raw = Files.newInputStream(s.getFile().toPath());
+        try {
+            raw.skipNBytes(b.gzOffset[block]);
+            // reads on through the following members
+            return new GZIPInputStream(raw, 1 << 16);
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    // ---- building ----
+
+    private static Blocks liveBlocks(TransactionLogSegments.Segment s, String path, boolean binary) throws IOException {
+        String key = new File(path).getAbsolutePath() + "@" + s.getBase();
+        long length = s.getEnd() - s.getBase();
+        synchronized (LIVE) {
+            Blocks b = LIVE.get(key);
+            // rolled (new base) or cut back after a torn append: start over
+            if (b == null || length < b.indexedTo) {
+                LIVE.keySet().removeIf(k -> k.startsWith(new File(path).getAbsolutePath() + "@"));
+                b = new Blocks();
+                LIVE.put(key, b);
+            }
+            if (length > b.indexedTo || b.count == 0) {
+                long from = b.count > 0 ? b.reopenLast() : 0;
+                try (InputStream in = s.openAt(s.getBase() + from)) {
+                    scan(in, binary, s.getBase(), from, length, b);
+                }
+                b.prepare();
+            }
+            return b;
+        }
+    }
+
+    private static Blocks closedBlocks(TransactionLogSegments.Segment s, boolean binary) throws IOException {
+        File idx = indexFileFor(s.getFile());
+        Blocks b = readIndex(idx, s.isCompressed());
+        if (b != null) return b;
+        b = new Blocks();
+        try (InputStream in = s.openAt(s.getBase())) {
+            scan(in, binary, s.getBase(), 0, s.getEnd() - s.getBase(), b);
+        }
+        b.compressed = s.isCompressed();
+        b.prepare();
+        // mid-compression the index being written is the compressed one's
+        if (s.isCompressed() || !new File(s.getFile().getPath() + ".gz").exists()) writeIndex(idx, b);
+        return b;
+    }
+
+    // Indexes the bytes in [from, end) of a segment; in is positioned at from,
+    // which is a block start: 0, or the start of the block reopenLast dropped
+    private static void scan(InputStream in, boolean binary, long base, long from, long end, Blocks into) throws IOException {
+        into.startBlock(from);
+        if (binary) {
+            // the block at from takes the restart record there (or the file header) with it
+            boolean[] first = {true};
+            long stopped = BinaryTransactionLog.decodeFrom(in, base, base + from, base + from, base + end, r -> {
+                if (r.isRestart() && !first[0]) into.startBlock(r.getOffset() - base);
+                first[0] = false;
+                into.add(r.getRawLine() != null ? Long.MIN_VALUE : r.getEpochMicros());
+            });
+            into.indexedTo = Math.max(from, stopped - base);
+        } else {
+            into.indexedTo = forEachLine(in, from, end, (bytes, lineFrom, lineTo, at) -> {
+                if (into.count == 0 || at - into.offset[into.count - 1] >= BLOCK_BYTES) into.startBlock(at);
+                int p1 = indexOf(bytes, lineFrom, lineTo);
+                into.add(p1 < 0 ? Long.MIN_VALUE : TransactionLogReplayer.timestampKey(bytes, lineFrom, p1));
+            });
+        }
+    }
+
+    // Compresses a closed plain segment into gz, one gzip member per block, and
+    // then writes its index; the caller holds the segment's lock and deletes the
+    // plain file
+    static void compress(TransactionLogSegments.Segment s, File gz) throws IOException {
+        boolean binary = BinaryTransactionLog.isBinary(s.getFile().getName());
+        File tmp = FileHandler.tempFileFor(gz.getPath()).toFile();
+        try {
+            writeCompressed(s, gz, tmp, binary);
+        } finally {
+            FileHandler.discardTemp(tmp.toPath());
+        }
+    }
+
+    private static void writeCompressed(TransactionLogSegments.Segment s, File gz, File tmp, boolean binary) throws IOException {
+        Blocks b = new Blocks();
+        long length = s.getFile().length();
+        try (InputStream in = s.openAt(s.getBase())) {
+            scan(in, binary, s.getBase(), 0, length, b);
+        }
+        if (b.count == 0) b.startBlock(0);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(s.getFile().toPath()), 1 << 16);
+             CountingOutput out = new CountingOutput(new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 1 << 16))) {
+            byte[] buf = new byte[1 << 16];
+            for (int i = 0; i < b.count; i++) {
+                b.gzOffset[i] = out.count;
+                // the last block also takes any torn tail, so no bytes are lost
+                long left = (i + 1 < b.count ? b.offset[i + 1] : length) - b.offset[i];
+                GZIPOutputStream member = new GZIPOutputStream(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] bytes, int off, int len) throws IOException {
+                        out.write(bytes, off, len);
+                    }
+
+                    @Override
+                    public void close() {
+                        // the file goes on with the next member
+                    }
+                }, 1 << 16);
+                while (left > 0) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, left));
+                    if (n < 0) throw new IOException("Segment shrank while compressing: " + s.getFile());
+                    member.write(buf, 0, n);
+                    left -= n;
+                }
+                member.close();
+            }
+        }
+        Files.move(tmp.toPath(), gz.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        b.compressed = true;
+        writeIndex(indexFileFor(s.getFile()), b);
+    }
+
+    // <segment>.idx for both the plain and the gzipped file of a segment
+    static File indexFileFor(File segment) {
+        String name = segment.getPath();
+        if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+        return new File(name + ".idx");
+    }
+
+    // Written aside and renamed into place; a lost race only costs a rescan
+    private static void writeIndex(File idx, Blocks b) {
+        File tmp = new File(idx.getPath() + "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeBoolean(b.compressed);
+            out.writeLong(b.indexedTo);
+            out.writeInt(b.count);
+            for (int i = 0; i < b.count; i++) {
+                out.writeLong(b.offset[i]);
+                out.writeLong(b.gzOffset[i]);
+                out.writeLong(b.minTs[i]);
+                out.writeLong(b.maxTs[i]);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write file: " + idx, e);
+        }
+        try {
+            Files.move(tmp.toPath(), idx.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException("Cannot replace file: " + idx, e);
+        }
+    }
+
+    // Null if missing, unreadable or made for the other form of the segment
+    private static Blocks readIndex(File idx, boolean compressed) {
+        if (!idx.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idx.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || in.readBoolean() != compressed) return null;
+            Blocks b = new Blocks();
+            b.compressed = compressed;
+            b.indexedTo = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                b.startBlock(in.readLong());
+                b.gzOffset[i] = in.readLong();
+                b.minTs[i] = in.readLong();
+                b.maxTs[i] = in.readLong();
+            }
+            b.prepare();
+            return b;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ---- text lines ----
+
+    private interface LineVisitor {
+        void visit(byte[] bytes, int from, int to, long offset);
+    }
+
+    // Whole lines starting in [from, end), '\r' stripped; returns the offset
+    // after the last whole line
+    private static long forEachLine(InputStream in, long from, long end, LineVisitor visitor) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        long bufStart = from; // segment offset of buf[0]
+        int limit = 0;
+        int pos = 0;
+        while (bufStart + pos < end) {
+            int nl = -1;
+            for (int i = pos; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    nl = i;
+                    break;
+                }
+            }
+            if (nl < 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                bufStart += pos;
+                limit -= pos;
+                pos = 0;
+                if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) break; // torn last line
+                limit += n;
+                continue;
+            }
+            int to = nl > pos && buf[nl - 1] == '\r' ? nl - 1 : nl;
+            if (to > pos) visitor.visit(buf, pos, to, bufStart + pos);
+            pos = nl + 1;
+        }
+        return bufStart + pos;
+    }
+
+    private static int indexOf(byte[] a, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] == '|') return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] a, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (a[i] == '|') return i;
+        }
+        return -1;
+    }
+
+    private static String text(byte[] a, int from, int to) {
+        return new String(a, from, to - from, StandardCharsets.UTF_8).trim();
+    }
+
+    // Counts what goes into the file, to know where each gzip member starts
+    private static final class CountingOutput extends FilterOutputStream {
+        long count;
+
+        CountingOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: java TransactionLogIndex <log> <from> <to>   (yyyy-MM-ddTHH:mm[:ss])");
+            System.exit(2);
+        }
+        long from = BinaryTransactionLog.toMicros(LocalDateTime.parse(args[1]));
+        long to = BinaryTransactionLog.toMicros(LocalDateTime.parse(args[2]));
+        long start = System.nanoTime();
+        Stats stats = query(args[0], from, to, (ts, id, field, value) -> {
+            System.out.println(BinaryTransactionLog.formatMicros(ts) + "|" + id + "|" + field + "|" + value);
+            return true;
+        });
+        System.err.println(stats + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,511 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Rebuilds student state from a base master file plus the grade and attendance
+// transaction logs, for crash recovery and for moving to a new data directory.
+// Each log is cut into byte ranges on line boundaries and the ranges are parsed
+// in parallel. Entries are grouped per student and put back in log order, by
+// position, not by their wall-clock stamps, which can step backwards or tie
+// across writers; grades and attendance set disjoint fields, so the two logs
+// need no order between them. Every student is then changed in memory and
+// written once, instead of one master write per logged operation as
+// re-issuing them through StudentService would.
+//
+// Log order is apply order only with a single writer. Instances sharing a
+// data directory each log an edit before they apply it, so two of them
+// changing the same grade or day at once may apply the edits in the other
+// order. A rebuild then keeps the value logged last, which can differ from
+// the one the live master ended up with.
+//
+// Log lines: ts|studentId|subject|score and ts|studentId|date|status, where
+// the subject runs from the second to the last '|'. Lines
+// for students the base does not have are counted and skipped, as are a torn
+// last line and lines that do not parse. Binary logs (BinaryTransactionLog,
+// ".bin") can only be decoded from the start of a segment, so each segment of
+// one is read as one range, as is each gzipped segment of a text log
+// (TransactionLogSegments); offsets are log positions across segments.
+//
+// Headless: java TransactionLogReplayer <base-master> <out-master> [grades-log] [attendance-log]
+public class TransactionLogReplayer {
+    // A range is read into memory whole, so keep them modest
+    private static final long MIN_RANGE_BYTES = 1L << 20;
+    private static final long MAX_RANGE_BYTES = 64L << 20;
+
+    // One parsed log line; seq is its position in the log, with the attendance
+    // log's positions above all of the grades log's
+    private static final class Entry {
+        final long seq;
+        final Mutation mutation;
+
+        Entry(long seq, Mutation mutation) {
+            this.seq = seq;
+            this.mutation = mutation;
+        }
+    }
+
+    // A byte range of one log segment, in offsets within its file
+    private static final class Range {
+        final boolean grades;
+        final boolean binary;
+        final TransactionLogSegments.Segment segment;
+        final long start;
+        final long end;
+
+        Range(boolean grades, boolean binary, TransactionLogSegments.Segment segment, long start, long end) {
+            this.grades = grades;
+            this.binary = binary;
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(e -> e.seq);
+
+    public static class Result {
+        private final List<Student> students;
+        private long entries;
+        private long applied;
+        private long unknownStudent;
+        private long malformed;
+        private int changedStudents;
+
+        Result(List<Student> students) {
+            this.students = students;
+        }
+
+        public List<Student> getStudents() { return students; }
+        public long getEntries() { return entries; }
+        public long getApplied() { return applied; }
+        public long getUnknownStudent() { return unknownStudent; }
+        public long getMalformed() { return malformed; }
+        public int getChangedStudents() { return changedStudents; }
+
+        public String summary() {
+            return students.size() + " students, " + entries + " log entries, " + applied + " applied to "
+                    + changedStudents + " students, " + unknownStudent + " for unknown students, " + malformed + " malformed";
+        }
+    }
+
+    // Per-student entries parsed from one range, or merged from all of them
+    private static final class Parsed {
+        final Map<String, List<Entry>> byStudent = new HashMap<>();
+        // a range sees the same ids, subjects and dates over and over; keeping one
+        // copy of each is most of the memory a large replay holds
+        final Map<String, String> strings = new HashMap<>();
+        long entries;
+        long malformed;
+
+        String intern(String s) {
+            String known = strings.putIfAbsent(s, s);
+            return known != null ? known : s;
+        }
+    }
+
+    private TransactionLogReplayer() {}
+
+    // Base students from a master file; changed students get version + 1 so a
+    // writer holding an older copy cannot overwrite the rebuilt record
+    public static Result rebuild(String baseMaster, String gradesLog, long gradesFrom,
+                                 String attendanceLog, long attendanceFrom) {
+        List<Student> base = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(Path.of(baseMaster), StandardCharsets.UTF_8)) {
+            lines.map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .map(StudentRecordParser::parseStudentLine)
+                    .filter(Objects::nonNull)
+                    .forEach(base::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + baseMaster, e);
+        }
+        return rebuild(base, gradesLog, gradesFrom, attendanceLog, attendanceFrom);
+    }
+
+    public static Result rebuild(List<Student> base, String gradesLog, long gradesFrom,
+                                 String attendanceLog, long attendanceFrom) {
+        Parsed parsed = parse(gradesLog, gradesFrom, attendanceLog, attendanceFrom);
+        Result result = new Result(base);
+        result.entries = parsed.entries;
+        result.malformed = parsed.malformed;
+
+        // the first record of a studentId is the live one, as in the store
+        Map<String, Student> byId = new LinkedHashMap<>();
+        for (Student s : base) byId.putIfAbsent(key(s.getStudentId()), s);
+
+        for (Map.Entry<String, List<Entry>> e : parsed.byStudent.entrySet()) {
+            Student s = byId.get(e.getKey());
+            if (s == null) {
+                result.unknownStudent += e.getValue().size();
+                continue;
+            }
+            for (Entry entry : e.getValue()) entry.mutation.applyTo(s);
+            s.setVersion(s.getVersion() + 1);
+            result.applied += e.getValue().size();
+            result.changedStudents++;
+        }
+        return result;
+    }
+
+    // Log entries from the given byte offsets on, grouped per student in log
+    // order; the mutations are ready to apply (ASSIGN_GRADE / MARK_ATTENDANCE)
+    public static Map<String, List<Mutation>> readMutations(String gradesLog, long gradesFrom,
+                                                            String attendanceLog, long attendanceFrom) {
+        Map<String, List<Mutation>> out = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Entry>> e : parse(gradesLog, gradesFrom, attendanceLog, attendanceFrom).byStudent.entrySet()) {
+            List<Mutation> mutations = new ArrayList<>(e.getValue().size());
+            for (Entry entry : e.getValue()) mutations.add(entry.mutation);
+            out.put(e.getKey(), mutations);
+        }
+        return out;
+    }
+
+    public static void writeMaster(List<Student> students, String path) {
+        List<String> lines = new ArrayList<>(students.size());
+        for (Student s : students) lines.add(StudentRepository.serializeStudent(s));
+        FileHandler.replaceAllLines(path, lines);
+    }
+
+    private static Parsed parse(String gradesLog, long gradesFrom, String attendanceLog, long attendanceFrom) {
+        List<Range> ranges = new ArrayList<>();
+        addRanges(ranges, true, gradesLog, gradesFrom);
+        addRanges(ranges, false, attendanceLog, attendanceFrom);
+
+        // ranges fill maps of their own, merged afterwards, so parsing shares nothing
+        List<Parsed> parts = IntStream.range(0, ranges.size()).parallel()
+                .mapToObj(i -> {
+                    Range r = ranges.get(i);
+                    if (r.binary) return parseBinary(r.segment, r.grades, r.start, r.end);
+                    if (r.segment.isCompressed()) return parseStream(r.segment, r.grades, r.start, r.end);
+                    return parseRange(r.segment, r.grades, r.start, r.end);
+                })
+                .collect(Collectors.toList());
+        Parsed parsed = new Parsed();
+        for (Parsed part : parts) {
+            parsed.entries += part.entries;
+            parsed.malformed += part.malformed;
+            for (Map.Entry<String, List<Entry>> e : part.byStudent.entrySet()) {
+                List<Entry> list = parsed.byStudent.putIfAbsent(key(e.getKey()), e.getValue());
+                if (list != null) list.addAll(e.getValue());
+            }
+        }
+        parsed.byStudent.values().parallelStream().forEach(l -> l.sort(ORDER));
+        return parsed;
+    }
+
+    // Splits the log from position from on into ranges; each range of a plain
+    // text segment is later widened or narrowed to whole lines, so the cut
+    // points themselves need not be line boundaries
+    private static void addRanges(List<Range> ranges, boolean grades, String path, long from) {
+        if (path == null) return;
+        // appends (and rolls) hold the exclusive lock per batch, so each segment ends on a whole batch
+        List<TransactionLogSegments.Segment> segments =
+                DataFileLock.forPath(path).shared(() -> TransactionLogSegments.forPath(path).segments());
+        boolean binary = BinaryTransactionLog.isBinary(path);
+        for (TransactionLogSegments.Segment s : segments) {
+            if (s.getEnd() <= from) continue;
+            long start = Math.max(from, s.getBase()) - s.getBase();
+            long end = s.getEnd() - s.getBase();
+            if (binary || s.isCompressed()) {
+                ranges.add(new Range(grades, binary, s, start, end));
+                continue;
+            }
+            int parts = Runtime.getRuntime().availableProcessors() * 2;
+            long size = Math.max(MIN_RANGE_BYTES, Math.min(MAX_RANGE_BYTES, (end - start + parts - 1) / parts));
+            for (long p = start; p < end; p += size) {
+                ranges.add(new Range(grades, false, s, p, Math.min(end, p + size)));
+            }
+        }
+    }
+
+    // A range owns the lines that start inside it: it skips the partial line it
+    // starts in (unless it starts the scan) and reads past its end to finish its last
+    private static Parsed parseRange(TransactionLogSegments.Segment segment, boolean grades, long start, long end) {
+        Parsed into = new Parsed();
+        try (FileChannel ch = FileChannel.open(segment.getFile().toPath(), StandardOpenOption.READ)) {
+            long fileEnd = ch.size();
+            long readFrom = start > 0 ? start - 1 : 0;
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(fileEnd - readFrom, end - readFrom + 4096));
+            ch.read(buf, readFrom);
+            byte[] bytes = buf.array();
+            int limit = buf.position();
+
+            int pos = 0;
+            if (start > 0) {
+                // the byte before start tells whether a line begins exactly at start
+                while (pos < limit && bytes[pos] != '\n') pos++;
+                pos++;
+            }
+            long seqBase = (grades ? 0 : 1L << 62) + segment.getBase() + readFrom;
+            while (pos < limit && readFrom + pos < end) {
+                int nl = indexOf(bytes, (byte) '\n', pos, limit);
+                if (nl < 0) {
+                    if (readFrom + limit >= fileEnd) break; // torn last line
+                    // the line runs past what was read; fetch it separately
+                    byte[] rest = readLine(ch, readFrom + pos);
+                    if (rest == null) break;
+                    parseLine(rest, 0, rest.length, grades, seqBase + pos, into);
+                    break;
+                }
+                parseLine(bytes, pos, nl, grades, seqBase + pos, into);
+                pos = nl + 1;
+            }
+        } catch (NoSuchFileException e) {
+            // compressed since it was listed; Segment opens the gzipped file instead
+            if (!segment.isLive()) return parseStream(segment, grades, start, end);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + segment.getFile(), e);
+        }
+        return into;
+    }
+
+    // As parseRange, over the segment's decompressed bytes read in order
+    private static Parsed parseStream(TransactionLogSegments.Segment segment, boolean grades, long start, long end) {
+        Parsed into = new Parsed();
+        long readFrom = start > 0 ? start - 1 : 0;
+        long seqBase = (grades ? 0 : 1L << 62) + segment.getBase();
+        try (InputStream in = segment.openAt(segment.getBase() + readFrom)) {
+            byte[] buf = new byte[1 << 20];
+            long bufStart = readFrom; // file offset of buf[0]
+            int limit = 0;
+            int pos = 0;
+            boolean skipping = start > 0;
+            boolean eof = false;
+            while (true) {
+                int nl = indexOf(buf, (byte) '\n', pos, limit);
+                if (nl < 0) {
+                    if (eof) break; // torn last line
+                    System.arraycopy(buf, pos, buf, 0, limit - pos);
+                    bufStart += pos;
+                    limit -= pos;
+                    pos = 0;
+                    if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                    int n = in.read(buf, limit, buf.length - limit);
+                    if (n < 0) eof = true;
+                    else limit += n;
+                    continue;
+                }
+                if (skipping) {
+                    // the byte before start tells whether a line begins exactly at start
+                    skipping = false;
+                } else {
+                    if (bufStart + pos >= end) break;
+                    parseLine(buf, pos, nl, grades, seqBase + bufStart + pos, into);
+                }
+                pos = nl + 1;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read file: " + segment.getFile(), e);
+        }
+        return into;
+    }
+
+    // Records of one binary segment between start and end; raw records are lines
+    // that did not parse when logged and go through parseLine to be counted the same way
+    private static Parsed parseBinary(TransactionLogSegments.Segment segment, boolean grades, long start, long end) {
+        Parsed into = new Parsed();
+        long seqBase = grades ? 0 : 1L << 62;
+        long to = segment.getBase() + end;
+        BinaryTransactionLog.readSegment(segment, segment.getBase() + start, r -> {
+            if (r.getOffset() >= to) return;
+            if (r.getRawLine() != null) {
+                byte[] line = r.getRawLine().getBytes(StandardCharsets.UTF_8);
+                parseLine(line, 0, line.length, grades, seqBase + r.getOffset(), into);
+                return;
+            }
+            String id = into.intern(r.getStudentId());
+            String middle = into.intern(r.getField());
+            if (id.isEmpty() || middle.isEmpty()) {
+                into.malformed++;
+                return;
+            }
+            Mutation m;
+            if (grades) {
+                if (!r.isNumeric() || r.getNumber() != (int) r.getNumber()) {
+                    into.malformed++;
+                    return;
+                }
+                m = Mutation.assignGrade(id, middle, (int) r.getNumber());
+            } else {
+                m = Mutation.markAttendance(id, middle, into.intern(r.isNumeric() ? Long.toString(r.getNumber()) : r.getText()));
+            }
+            into.byStudent.computeIfAbsent(id, k -> new ArrayList<>()).add(new Entry(seqBase + r.getOffset(), m));
+            into.entries++;
+        });
+        return into;
+    }
+
+    // Works on the bytes: '|' cannot occur inside a multi-byte UTF-8 sequence,
+    // so only the id and the middle field are ever decoded
+    private static void parseLine(byte[] bytes, int from, int to, boolean grades, long seq, Parsed into) {
+        if (to > from && bytes[to - 1] == '\r') to--;
+        int p1 = indexOf(bytes, (byte) '|', from, to);
+        int p2 = p1 < 0 ? -1 : indexOf(bytes, (byte) '|', p1 + 1, to);
+        int p3 = lastIndexOf(bytes, (byte) '|', from, to);
+        if (p1 < 0 || p2 < 0 || p3 < p2) {
+            if (!isBlank(bytes, from, to)) into.malformed++;
+            return;
+        }
+        long ts = timestampKey(bytes, from, p1);
+        String id = into.intern(new String(bytes, p1 + 1, p2 - p1 - 1, StandardCharsets.UTF_8).trim());
+        String middle = into.intern(new String(bytes, p2 + 1, p3 - p2 - 1, StandardCharsets.UTF_8).trim());
+        String last = new String(bytes, p3 + 1, to - p3 - 1, StandardCharsets.UTF_8).trim();
+        if (ts == Long.MIN_VALUE || id.isEmpty() || middle.isEmpty()) {
+            into.malformed++;
+            return;
+        }
+
+        Mutation m;
+        if (grades) {
+            try {
+                m = Mutation.assignGrade(id, middle, Integer.parseInt(last));
+            } catch (NumberFormatException e) {
+                into.malformed++;
+                return;
+            }
+        } else {
+            m = Mutation.markAttendance(id, middle, into.intern(last));
+        }
+        // keyed by the id as written; ids differing only in case are merged later
+        into.byStudent.computeIfAbsent(id, k -> new ArrayList<>()).add(new Entry(seq, m));
+        into.entries++;
+    }
+
+    // LocalDateTime.toString() stamps (yyyy-MM-ddTHH:mm[:ss[.fraction]]) as
+    // microseconds since 1970-01-01T00:00 read as UTC, the same scale the binary
+    // log stores. Long.MIN_VALUE if the stamp does not have that shape.
+    static long timestampKey(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') from++;
+        while (to > from && b[to - 1] == ' ') to--;
+        if (to - from < 16 || b[from + 4] != '-' || b[from + 7] != '-' || b[from + 10] != 'T' || b[from + 13] != ':') return Long.MIN_VALUE;
+        long year = digits(b, from, 4);
+        long month = digits(b, from + 5, 2);
+        long day = digits(b, from + 8, 2);
+        long hour = digits(b, from + 11, 2);
+        long minute = digits(b, from + 14, 2);
+        long second = 0;
+        long micros = 0;
+        int p = from + 16;
+        if (p < to) {
+            if (b[p] != ':' || to - p < 3) return Long.MIN_VALUE;
+            second = digits(b, p + 1, 2);
+            p += 3;
+            if (p < to) {
+                if (b[p] != '.') return Long.MIN_VALUE;
+                long scale = 100000;
+                for (p++; p < to; p++) {
+                    int d = b[p] - '0';
+                    if (d < 0 || d > 9) return Long.MIN_VALUE;
+                    micros += d * scale;
+                    scale /= 10;
+                }
+            }
+        }
+        if ((year | month | day | hour | minute | second) < 0 || month < 1 || month > 12 || day < 1
+                || hour > 23 || minute > 59 || second > 59) return Long.MIN_VALUE;
+        if (day > 28 && day > YearMonth.of((int) year, (int) month).lengthOfMonth()) return Long.MIN_VALUE;
+        long seconds = ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second;
+        return seconds * 1_000_000 + micros;
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date (March-based years, so
+    // the leap day falls at the end)
+    private static long daysFromCivil(long year, long month, long day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long digits(byte[] b, int from, int count) {
+        long v = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    // One whole line starting at offset, or null if the file ends before its newline
+    private static byte[] readLine(FileChannel ch, long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long pos = offset;
+        while (true) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) return null;
+            byte[] a = buf.array();
+            int nl = indexOf(a, (byte) '\n', 0, n);
+            if (nl >= 0) {
+                line.write(a, 0, nl);
+                return line.toByteArray();
+            }
+            line.write(a, 0, n);
+            pos += n;
+        }
+    }
+
+    private static int indexOf(byte[] a, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] a, byte b, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (a[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] a, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] != ' ' && a[i] != '\t') return false;
+        }
+        return true;
+    }
+
+    private static String key(String studentId) {
+        return studentId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: java TransactionLogReplayer <base-master> <out-master> [grades-log] [attendance-log]");
+            System.exit(2);
+        }
+        String grades = args.length > 2 ? args[2] : DataPaths.gradesLog();
+        String attendance = args.length > 3 ? args[3] : DataPaths.attendanceLog();
+
+        long start = System.nanoTime();
+        Result result = rebuild(args[0], grades, 0, attendance, 0);
+        writeMaster(result.getStudents(), args[1]);
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(result.summary() + " in " + ms + " ms -> " + args[1]);
+    }
+}
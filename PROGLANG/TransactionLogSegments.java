@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+// Rolled segments of a transaction log. The file at the log's path stays the
+// live segment; LogAppender renames it aside once it reaches
+// -Dsis.txnSegmentBytes (default 64MB) or has been open for
+// -Dsis.txnSegmentMinutes (default 0: no time limit), and starts a new one.
+//
+// Log positions run on across segments: a closed segment is named
+// <stem>.<base>-<end><ext>, where base and end are positions of its first and
+// past-its-last byte, and the live segment starts at the newest closed one's
+// end. Offsets kept by checkpoints, snapshots and the replayer stay valid
+// after a roll and after compression, which only changes the file. Binary logs
+// start each segment with their own header, dictionary and timestamp base.
+//
+// Closed segments are gzipped in the background (-Dsis.txnCompress=false
+// keeps them plain) and the oldest are deleted past -Dsis.txnRetainSegments
+// closed segments or -Dsis.txnRetainDays days (both default 0: keep all). The
+// newest closed segment is always kept: the live segment's base comes from it.
+// Deleting segments loses history; a replay from the start of the log then
+// begins at the oldest segment left. Each closed segment may have a <segment>.idx
+// beside it (TransactionLogIndex), which goes with it.
+//
+// Headless: java TransactionLogSegments list <log>
+//           java TransactionLogSegments cat <log> [from-position]
+public class TransactionLogSegments {
+    private static final String GZ = ".gz";
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "txn-log-compressor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final File active;
+    private final File dir;
+    private final String stem;
+    private final String ext;
+    private final Pattern closedName;
+
+    public static class Segment {
+        private final File file;
+        private final long base;
+        private final long end;
+        private final boolean compressed;
+        private final boolean live;
+
+        Segment(File file, long base, long end, boolean compressed, boolean live) {
+            this.file = file;
+            this.base = base;
+            this.end = end;
+            this.compressed = compressed;
+            this.live = live;
+        }
+
+        public File getFile() { return file; }
+        public long getBase() { return base; }
+        public long getEnd() { return end; }
+        public boolean isCompressed() { return compressed; }
+        public boolean isLive() { return live; }
+
+        // The segment's bytes from a position inside it, decompressed
+        public InputStream openAt(long position) throws IOException {
+            InputStream in = open();
+            try {
+                in.skipNBytes(position - base);
+                return in;
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private InputStream open() throws IOException {
+            try {
+                return compressed ? gunzip(file) : new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16);
+            } catch (NoSuchFileException e) {
+                // compressed since it was listed
+                if (compressed || live) throw e;
+                return gunzip(new File(file.getPath() + GZ));
+            }
+        }
+
+        private static InputStream gunzip(File f) throws IOException {
+            return new GZIPInputStream(Files.newInputStream(f.toPath()), 1 << 16);
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + " [" + base + ", " + end + ")" + (live ? " live" : "");
+        }
+    }
+
+    public TransactionLogSegments(String path) {
+        this.active = new File(path);
+        this.dir = active.getAbsoluteFile().getParentFile();
+        String name = active.getName();
+        int dot = name.lastIndexOf('.');
+        this.stem = dot > 0 ? name.substring(0, dot) : name;
+        this.ext = dot > 0 ? name.substring(dot) : "";
+        this.closedName = Pattern.compile(Pattern.quote(stem) + "\\.(\\d+)-(\\d+)" + Pattern.quote(ext) + "(" + Pattern.quote(GZ) + ")?");
+    }
+
+    public static TransactionLogSegments forPath(String path) {
+        return new TransactionLogSegments(path);
+    }
+
+    // Only the transaction logs roll; other appended files are left alone
+    public static boolean rolls(String path) {
+        String name = new File(path).getName();
+        for (String log : new String[]{DataPaths.GRADES_TXN, DataPaths.ATTEND_TXN, DataPaths.GRADES_TXN_BIN, DataPaths.ATTEND_TXN_BIN}) {
+            if (new File(log).getName().equals(name)) return true;
+        }
+        return false;
+    }
+
+    public static long segmentMaxBytes() {
+        return Long.getLong("sis.txnSegmentBytes", 64L << 20);
+    }
+
+    public static long segmentMaxMillis() {
+        return TimeUnit.MINUTES.toMillis(Long.getLong("sis.txnSegmentMinutes", 0L));
+    }
+
+    public static boolean compressClosed() {
+        return Boolean.parseBoolean(System.getProperty("sis.txnCompress", "true"));
+    }
+
+    public static int retainSegments() {
+        return Integer.getInteger("sis.txnRetainSegments", 0);
+    }
+
+    public static long retainMillis() {
+        return TimeUnit.DAYS.toMillis(Long.getLong("sis.txnRetainDays", 0L));
+    }
+
+    // Closed segments oldest first, then the live one. Take the log's shared
+    // lock around this for a consistent end.
+    public List<Segment> segments() {
+        List<Segment> out = closedSegments();
+        long base = out.isEmpty() ? 0 : out.get(out.size() - 1).getEnd();
+        out.add(new Segment(active, base, base + active.length(), false, true));
+        return out;
+    }
+
+    // Position just past the last byte written to the log at path
+    public static long endOf(String path) {
+        List<Segment> all = forPath(path).segments();
+        return all.get(all.size() - 1).getEnd();
+    }
+
+    // Everything from position on, across segments, decompressed; positions
+    // before the oldest segment left start at that segment
+    public InputStream openFrom(long position) throws IOException {
+        List<InputStream> parts = new ArrayList<>();
+        try {
+            for (Segment s : segments()) {
+                if (s.getEnd() <= position) continue;
+                parts.add(s.openAt(Math.max(position, s.getBase())));
+            }
+        } catch (IOException e) {
+            for (InputStream in : parts) in.close();
+            throw e;
+        }
+        Enumeration<InputStream> e = Collections.enumeration(parts);
+        return new SequenceInputStream(e);
+    }
+
+    private List<Segment> closedSegments() {
+        Map<Long, Segment> byBase = new TreeMap<>();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(stem + "."));
+        if (files == null) return new ArrayList<>();
+        for (File f : files) {
+            Matcher m = closedName.matcher(f.getName());
+            if (!m.matches()) continue;
+            boolean compressed = m.group(3) != null;
+            Segment s = new Segment(f, Long.parseLong(m.group(1)), Long.parseLong(m.group(2)), compressed, false);
+            // mid-compression both files exist; the plain one is complete
+            Segment seen = byBase.get(s.getBase());
+            if (seen == null || seen.isCompressed()) byBase.put(s.getBase(), s);
+        }
+        return new ArrayList<>(byBase.values());
+    }
+
+    // Renames the live segment aside; the caller holds the log's exclusive lock
+    // and opens a new live file. Returns the closed segment, or null if empty.
+    Segment roll() throws IOException {
+        List<Segment> all = segments();
+        Segment live = all.get(all.size() - 1);
+        if (live.getEnd() == live.getBase()) return null;
+        File closed = new File(dir, stem + "." + live.getBase() + "-" + live.getEnd() + ext);
+        Files.move(active.toPath(), closed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(closed, live.getBase(), live.getEnd(), false, false);
+    }
+
+    // Compression and retention run on the compressor thread
+    void maintain() {
+        COMPRESSOR.execute(() -> {
+            try {
+                if (compressClosed()) compressAll();
+                applyRetention();
+            } catch (RuntimeException e) {
+                System.err.println("Transaction log maintenance failed for " + active + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Also picks up segments left plain by a crash or by compression being off earlier
+    private void compressAll() {
+        for (Segment s : closedSegments()) {
+            if (s.isCompressed()) continue;
+            File plain = s.getFile();
+            // the segment's own lock, not the log's, so appends go on meanwhile;
+            // another process that compressed it first leaves no plain file
+            DataFileLock.forPath(plain.getPath()).exclusive(() -> {
+                if (!plain.exists()) return;
+                try {
+                    // in blocks, with an index, so time-range queries can seek into it
+                    TransactionLogIndex.compress(s, new File(plain.getPath() + GZ));
+                    Files.delete(plain.toPath());
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot compress transaction log segment: " + plain, e);
+                }
+            });
+            new File(DataFileLock.lockFileFor(plain.getPath())).delete();
+        }
+    }
+
+    private void applyRetention() {
+        List<Segment> closed = closedSegments();
+        int keep = retainSegments();
+        long maxAge = retainMillis();
+        long now = System.currentTimeMillis();
+        // never the newest closed segment
+        for (int i = 0; i < closed.size() - 1; i++) {
+            Segment s = closed.get(i);
+            boolean tooMany = keep > 0 && closed.size() - i > keep;
+            boolean tooOld = maxAge > 0 && now - s.getFile().lastModified() > maxAge;
+            if (!tooMany && !tooOld) break;
+            // not while another process is compressing it
+            DataFileLock.forPath(s.getFile().getPath()).exclusive(() -> {
+                if (!s.getFile().delete() && s.getFile().exists()) {
+                    System.err.println("Cannot delete transaction log segment: " + s.getFile());
+                }
+                TransactionLogIndex.indexFileFor(s.getFile()).delete();
+            });
+            new File(DataFileLock.lockFileFor(s.getFile().getPath())).delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("list")) {
+            for (Segment s : forPath(args[1]).segments()) {
+                System.out.println(s + ", " + s.getFile().length() + " bytes on disk");
+            }
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("cat")) {
+            long from = args.length == 3 ? Long.parseLong(args[2]) : 0;
+            if (BinaryTransactionLog.isBinary(args[1])) {
+                BinaryTransactionLog.read(args[1], from, r -> System.out.println(r.toLine()));
+            } else {
+                try (InputStream in = forPath(args[1]).openFrom(from)) {
+                    in.transferTo(System.out);
+                }
+                System.out.flush();
+            }
+        } else {
+            System.err.println("Usage: java TransactionLogSegments list <log>");
+            System.err.println("       java TransactionLogSegments cat <log> [from-position]");
+            System.exit(2);
+        }
+    }
+}
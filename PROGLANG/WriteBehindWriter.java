@@ -0,0 +1,313 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Write-behind mode for grade and attendance changes (-Dsis.writeBehind=true).
+// A change is acknowledged as soon as its transaction line is fsynced; a
+// background thread folds queued changes into the master store every window
+// (-Dsis.writeBehindMs, default 200), writing each touched student once per
+// batch however many changes it received, and all of them with one upsertAll.
+//
+// Reads through StudentService see queued changes via overlay(). Each
+// instance keeps its own checkpoint, write_behind.<host>-<pid>.checkpoint,
+// recording how far each transaction log is reflected in the master; a clean
+// close deletes it. On startup an instance replays the log tail past the
+// checkpoint of every instance on this host whose process is gone, then
+// deletes that checkpoint. Checkpoints from other hosts are left alone, since
+// their owners cannot be checked. Replay applies the tail in log order, which
+// is apply order for a single writer only (see TransactionLogReplayer): where
+// two instances changed the same grade or day at once, recovery may put the
+// value logged last back over the one applied last.
+public class WriteBehindWriter {
+    private static final String CHECKPOINT_PREFIX = "write_behind.";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    // the single checkpoint written before checkpoints were per instance
+    private static final String LEGACY_CHECKPOINT = DataPaths.DATA_DIR + File.separator + "write_behind.checkpoint";
+    private static final int MAX_FLUSH_ATTEMPTS = 8;
+
+    private final String checkpoint = checkpointFor(DataFileLock.host(), ProcessHandle.current().pid());
+
+    private final StudentRepository repo;
+    private final long windowMs;
+    private final Thread writer;
+
+    // Appending + queueing happens under the read side, so a flush (write side)
+    // that measures the logs knows every line up to there is in its batch
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    // lower-cased studentId -> changes in arrival order; guarded by this
+    private Map<String, List<Mutation>> pending = new LinkedHashMap<>();
+    private Map<String, List<Mutation>> inFlight = new LinkedHashMap<>();
+    private volatile boolean closed;
+    // One flush at a time: the writer thread's and close()'s
+    private final Object flushLock = new Object();
+
+    public static boolean enabled() {
+        return Boolean.getBoolean("sis.writeBehind");
+    }
+
+    public WriteBehindWriter(StudentRepository repo) {
+        this(repo, Long.getLong("sis.writeBehindMs", 200L));
+    }
+
+    public WriteBehindWriter(StudentRepository repo, long windowMs) {
+        this.repo = repo;
+        this.windowMs = windowMs;
+        recover();
+
+        this.writer = new Thread(this::writeLoop, "student-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "student-write-behind-shutdown"));
+    }
+
+    // Durably logs the lines, then queues the changes; returns once both are done
+    public void submit(List<String> gradeLines, List<String> attendanceLines, List<Mutation> mutations) {
+        if (closed) throw new IllegalStateException("Write-behind writer is closed");
+        gate.readLock().lock();
+        try {
+            if (!gradeLines.isEmpty()) {
+                FileHandler.appendLines(DataPaths.gradesLog(), gradeLines, LogAppender.Durability.FSYNC_EACH_COMMIT);
+            }
+            if (!attendanceLines.isEmpty()) {
+                FileHandler.appendLines(DataPaths.attendanceLog(), attendanceLines, LogAppender.Durability.FSYNC_EACH_COMMIT);
+            }
+            synchronized (this) {
+                for (Mutation m : mutations) {
+                    pending.computeIfAbsent(key(m.getStudentId()), k -> new ArrayList<>()).add(m);
+                }
+            }
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    // Applies queued changes (those being written first) to a copy read from the store
+    public Student overlay(Student s) {
+        if (s == null) return null;
+        List<Mutation> changes;
+        synchronized (this) {
+            if (inFlight.isEmpty() && pending.isEmpty()) return s;
+            String k = key(s.getStudentId());
+            List<Mutation> a = inFlight.get(k);
+            List<Mutation> b = pending.get(k);
+            if (a == null && b == null) return s;
+            changes = new ArrayList<>();
+            if (a != null) changes.addAll(a);
+            if (b != null) changes.addAll(b);
+        }
+        for (Mutation m : changes) m.applyTo(s);
+        return s;
+    }
+
+    public synchronized int pendingCount() {
+        int n = 0;
+        for (List<Mutation> l : pending.values()) n += l.size();
+        for (List<Mutation> l : inFlight.values()) n += l.size();
+        return n;
+    }
+
+    // Writes everything queued so far; the checkpoint only moves when all of it made it
+    public void flush() {
+        synchronized (flushLock) {
+            flushLocked();
+        }
+    }
+
+    private void flushLocked() {
+        long[] logEnds = new long[2];
+        Map<String, List<Mutation>> batch;
+        gate.writeLock().lock();
+        try {
+            logEnds[0] = TransactionLogSegments.endOf(DataPaths.gradesLog());
+            logEnds[1] = TransactionLogSegments.endOf(DataPaths.attendanceLog());
+            synchronized (this) {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<>();
+            }
+        } finally {
+            gate.writeLock().unlock();
+        }
+
+        Map<String, List<Mutation>> left = batch;
+        try {
+            left = write(batch);
+        } catch (RuntimeException e) {
+            System.err.println("Write-behind flush failed, will retry: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            if (!left.isEmpty()) {
+                // put the unwritten changes back in front of anything queued meanwhile
+                Map<String, List<Mutation>> merged = new LinkedHashMap<>(left);
+                for (Map.Entry<String, List<Mutation>> e : pending.entrySet()) {
+                    merged.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).addAll(e.getValue());
+                }
+                pending = merged;
+            }
+            inFlight = new LinkedHashMap<>();
+        }
+        if (left.isEmpty()) writeCheckpoint(logEnds[0], logEnds[1]);
+    }
+
+    // Stops the background thread and writes out what is still queued
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        // nothing left to replay for this instance
+        if (pendingCount() == 0) {
+            deleteFile(checkpoint);
+            deleteFile(DataFileLock.lockFileFor(checkpoint));
+        }
+    }
+
+    // Waits out the window on this monitor rather than by interruption, which
+    // would close the file channels of a write in progress
+    private void writeLoop() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!closed) wait(windowMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                System.err.println("Write-behind flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // One read and one upsertAll per round for every touched student; students
+    // that lost a version race are re-read and retried. Returns what is left.
+    private Map<String, List<Mutation>> write(Map<String, List<Mutation>> batch) {
+        Map<String, List<Mutation>> left = new LinkedHashMap<>(batch);
+        for (int attempt = 0; attempt < MAX_FLUSH_ATTEMPTS && !left.isEmpty(); attempt++) {
+            List<String> keys = new ArrayList<>();
+            List<Student> students = new ArrayList<>();
+            for (Map.Entry<String, List<Mutation>> e : left.entrySet()) {
+                Optional<Student> opt = repo.findByStudentId(e.getValue().get(0).getStudentId().trim());
+                if (opt.isEmpty()) continue; // checked on submit; nothing to apply to
+                Student s = opt.get();
+                for (Mutation m : e.getValue()) m.applyTo(s);
+                keys.add(e.getKey());
+                students.add(s);
+            }
+            left.keySet().retainAll(keys);
+            if (students.isEmpty()) break;
+
+            boolean[] written = repo.upsertAll(students);
+            for (int i = 0; i < keys.size(); i++) {
+                if (written[i]) left.remove(keys.get(i));
+            }
+        }
+        return left;
+    }
+
+    // Claims this instance's checkpoint, then replays the log tail of instances
+    // on this host that died without closing. A checkpoint already named after
+    // this pid belongs to an earlier process that had the same pid.
+    private void recover() {
+        boolean reused = new File(checkpoint).exists();
+        Properties own = reused ? readCheckpoint(checkpoint) : null;
+        writeCheckpoint(TransactionLogSegments.endOf(DataPaths.gradesLog()), TransactionLogSegments.endOf(DataPaths.attendanceLog()));
+        if (own != null) replay(checkpoint + " (earlier process)", own);
+
+        File[] files = new File(DataPaths.DATA_DIR).listFiles((dir, name) ->
+                name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX));
+        if (files == null) return;
+        for (File f : files) {
+            String path = f.getPath();
+            if (new File(path).getAbsoluteFile().equals(new File(checkpoint).getAbsoluteFile())) continue;
+            // two instances starting together must not both replay the same tail
+            boolean replayed = DataFileLock.forPath(path).exclusive(() -> {
+                if (!f.exists()) return false;
+                Properties cp = readCheckpoint(path);
+                if (cp == null || !isOrphan(path, cp)) return false;
+                replay(path, cp);
+                deleteFile(path);
+                return true;
+            });
+            if (replayed) deleteFile(DataFileLock.lockFileFor(path));
+        }
+    }
+
+    // Left by an instance on this host that is no longer running, or by the
+    // single-instance writer that came before per-instance checkpoints
+    private static boolean isOrphan(String path, Properties cp) {
+        if (new File(path).getAbsoluteFile().equals(new File(LEGACY_CHECKPOINT).getAbsoluteFile())) return true;
+        if (!DataFileLock.host().equals(cp.getProperty("host"))) return false;
+        try {
+            long pid = Long.parseLong(cp.getProperty("pid", ""));
+            return ProcessHandle.of(pid).map(p -> !p.isAlive()).orElse(true);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void replay(String from, Properties cp) {
+        // the legacy checkpoint was kept, marked clean, after a clean shutdown
+        if (Boolean.parseBoolean(cp.getProperty("clean", "false"))) return;
+        Map<String, List<Mutation>> replay = TransactionLogReplayer.readMutations(
+                DataPaths.gradesLog(), Long.parseLong(cp.getProperty("grades", "0")),
+                DataPaths.attendanceLog(), Long.parseLong(cp.getProperty("attendance", "0")));
+        int lines = 0;
+        for (List<Mutation> l : replay.values()) lines += l.size();
+        if (!replay.isEmpty()) {
+            Map<String, List<Mutation>> left = write(replay);
+            if (!left.isEmpty()) throw new RuntimeException("Cannot replay transaction log for " + left.keySet());
+        }
+        System.err.println("Write-behind recovery replayed " + lines + " transaction lines from " + from);
+    }
+
+    private static String checkpointFor(String host, long pid) {
+        return DataPaths.DATA_DIR + File.separator + CHECKPOINT_PREFIX + host.replaceAll("[^A-Za-z0-9._-]", "_")
+                + "-" + pid + CHECKPOINT_SUFFIX;
+    }
+
+    private static Properties readCheckpoint(String path) {
+        Properties p = new Properties();
+        for (String line : FileHandler.readAllLines(path)) {
+            int eq = line.indexOf('=');
+            if (eq > 0) p.setProperty(line.substring(0, eq).trim(), line.substring(eq + 1).trim());
+        }
+        return p.isEmpty() ? null : p;
+    }
+
+    private void writeCheckpoint(long gradesEnd, long attendanceEnd) {
+        FileHandler.replaceAllLines(checkpoint, List.of(
+                "host=" + DataFileLock.host(),
+                "pid=" + ProcessHandle.current().pid(),
+                "grades=" + gradesEnd,
+                "attendance=" + attendanceEnd));
+    }
+
+    private static void deleteFile(String path) {
+        try {
+            Files.deleteIfExists(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("Cannot delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static String key(String studentId) {
+        return studentId.trim().toLowerCase(Locale.ROOT);
+    }
+}